@@ -0,0 +1,90 @@
+package com.example.bookgate;
+
+import android.graphics.Bitmap;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class BitmapPoolTest {
+
+    private static Bitmap mutable(int width, int height) {
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    @Test
+    public void reusesABitmapThatFits() {
+        BitmapPool pool = new BitmapPool(10 * 1024 * 1024);
+        Bitmap bitmap = mutable(100, 150);
+        pool.put(bitmap);
+
+        assertSame(bitmap, pool.get(100 * 150 * 4));
+        assertEquals(1, pool.getHitCount());
+        assertEquals(100 * 150 * 4, pool.getBytesAvoided());
+        assertEquals(0, pool.getSizeBytes());
+    }
+
+    @Test
+    public void missesWhenNothingIsCloseInSize() {
+        BitmapPool pool = new BitmapPool(10 * 1024 * 1024);
+        pool.put(mutable(100, 100));
+
+        // Too small, then more than twice what is needed
+        assertNull(pool.get(200 * 200 * 4));
+        assertNull(pool.get(40 * 40 * 4));
+        assertEquals(2, pool.getMissCount());
+        assertEquals(0, pool.getHitRate(), 0);
+    }
+
+    @Test
+    public void takesTheSmallestBitmapThatFits() {
+        BitmapPool pool = new BitmapPool(10 * 1024 * 1024);
+        Bitmap large = mutable(120, 120);
+        Bitmap small = mutable(100, 100);
+        pool.put(large);
+        pool.put(small);
+
+        assertSame(small, pool.get(90 * 100 * 4));
+        assertSame(large, pool.get(90 * 100 * 4));
+    }
+
+    @Test
+    public void ignoresImmutableBitmaps() {
+        BitmapPool pool = new BitmapPool(10 * 1024 * 1024);
+        pool.put(mutable(10, 10).copy(Bitmap.Config.ARGB_8888, false));
+
+        assertEquals(0, pool.getSizeBytes());
+    }
+
+    @Test
+    public void dropsTheLargestBitmapsWhenFull() {
+        BitmapPool pool = new BitmapPool(100 * 100 * 4 * 2);
+        Bitmap small = mutable(100, 100);
+        Bitmap large = mutable(100, 150);
+        pool.put(large);
+        pool.put(small);
+        pool.put(mutable(100, 100));
+
+        assertTrue(large.isRecycled());
+        assertFalse(small.isRecycled());
+        assertEquals(100 * 100 * 4 * 2, pool.getSizeBytes());
+    }
+
+    @Test
+    public void failedReuseIsNotCountedAsAHit() {
+        BitmapPool pool = new BitmapPool(10 * 1024 * 1024);
+        Bitmap bitmap = mutable(100, 100);
+        pool.put(bitmap);
+        Bitmap reused = pool.get(100 * 100 * 4);
+        pool.onReuseFailed(reused, 100 * 100 * 4);
+
+        assertEquals(0, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+        assertEquals(0, pool.getBytesAvoided());
+        assertEquals(100 * 100 * 4, pool.getSizeBytes());
+    }
+}
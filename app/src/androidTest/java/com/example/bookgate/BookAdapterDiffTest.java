@@ -0,0 +1,157 @@
+package com.example.bookgate;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Submits catalog snapshots to BookAdapter the way BookListActivity does on
+ * resume and counts the change notifications, each of which means rebinding.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookAdapterDiffTest {
+
+    private BookAdapter adapter;
+    private CountingObserver observer;
+
+    @Before
+    public void setUp() throws Exception {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            adapter = new BookAdapter(InstrumentationRegistry.getInstrumentation().getTargetContext());
+            observer = new CountingObserver();
+            adapter.registerAdapterDataObserver(observer);
+        });
+        submitAndWait(catalog(100, "Title"));
+        observer.reset();
+    }
+
+    @Test
+    public void unchangedCatalogCausesNoRebinds() throws Exception {
+        // A reload builds new row objects with the same contents
+        submitAndWait(catalog(100, "Title"));
+
+        assertEquals(0, observer.changed);
+        assertEquals(0, observer.inserted);
+        assertEquals(0, observer.removed);
+        assertEquals(0, observer.moved);
+        assertEquals(0, observer.fullRefreshes);
+    }
+
+    @Test
+    public void onlyEditedRowIsRebound() throws Exception {
+        List<BookSummary> books = catalog(100, "Title");
+        books.set(41, new BookSummary(42, "Edited", "Author 42", null, null, 0, 0, 0));
+        submitAndWait(books);
+
+        assertEquals(1, observer.changed);
+        assertEquals(0, observer.inserted);
+        assertEquals(0, observer.removed);
+        assertEquals(0, observer.fullRefreshes);
+    }
+
+    @Test
+    public void keyCountChangesCauseNoRebinds() throws Exception {
+        // A redemption reloads the catalog with new counters for one book
+        List<BookSummary> books = catalog(100, "Title");
+        books.set(41, new BookSummary(42, "Title 42", "Author 42", null, null, 0, 4, 1));
+        submitAndWait(books);
+
+        assertEquals(0, observer.changed);
+        assertEquals(0, observer.fullRefreshes);
+    }
+
+    @Test
+    public void placeholdersAreReplacedInPlace() throws Exception {
+        List<BookSummary> loading = catalog(100, "Title");
+        for (int i = 0; i < BookPager.PAGE_SIZE; i++) {
+            loading.add(null);
+        }
+        submitAndWait(loading);
+        observer.reset();
+
+        List<BookSummary> loaded = catalog(100 + BookPager.PAGE_SIZE, "Title");
+        submitAndWait(loaded);
+
+        // The 100 loaded rows stay bound; only the placeholder slots are touched
+        assertEquals(0, observer.fullRefreshes);
+        assertEquals(100, observer.firstPosition);
+        assertEquals(BookPager.PAGE_SIZE, observer.inserted);
+    }
+
+    @Test
+    public void itemIdsAreStable() {
+        assertTrue(adapter.hasStableIds());
+        assertEquals(8, adapter.getItemId(7));
+    }
+
+    private static List<BookSummary> catalog(int size, String titlePrefix) {
+        List<BookSummary> books = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            books.add(new BookSummary(i + 1, titlePrefix + " " + (i + 1), "Author " + (i + 1), null, null, 0, 0, 0));
+        }
+        return books;
+    }
+
+    private void submitAndWait(List<BookSummary> books) throws InterruptedException {
+        CountDownLatch committed = new CountDownLatch(1);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                () -> adapter.submitList(books, committed::countDown));
+        assertTrue(committed.await(5, TimeUnit.SECONDS));
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+    }
+
+    private static class CountingObserver extends RecyclerView.AdapterDataObserver {
+        int changed, inserted, removed, moved, fullRefreshes;
+        int firstPosition = Integer.MAX_VALUE;
+
+        void reset() {
+            changed = inserted = removed = moved = fullRefreshes = 0;
+            firstPosition = Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void onChanged() {
+            fullRefreshes++;
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            changed += itemCount;
+            firstPosition = Math.min(firstPosition, positionStart);
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            onItemRangeChanged(positionStart, itemCount);
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            inserted += itemCount;
+            firstPosition = Math.min(firstPosition, positionStart);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            removed += itemCount;
+            firstPosition = Math.min(firstPosition, positionStart);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            moved += itemCount;
+            firstPosition = Math.min(firstPosition, Math.min(fromPosition, toPosition));
+        }
+    }
+}
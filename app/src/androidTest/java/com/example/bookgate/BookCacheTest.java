@@ -0,0 +1,94 @@
+package com.example.bookgate;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class BookCacheTest {
+
+    private static final String TEST_DB = "book_cache_test.db";
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+    private BookCache cache;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+        cache = dbHelper.getBookCache();
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void reopeningABookIsAHit() {
+        int bookId = (int) dbHelper.addBook("Title", "Author", "Description", null, null);
+        cache.onBookChanged(bookId);
+
+        assertEquals("Title", dbHelper.getBookById(bookId).getTitle());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+
+        assertEquals("Title", dbHelper.getBookById(bookId).getTitle());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void addedBookIsServedFromMemory() {
+        int bookId = (int) dbHelper.addBook("Title", "Author", "Description", "/cover.jpg", "/book.pdf");
+
+        Book book = dbHelper.getBookById(bookId);
+        assertEquals(1, cache.getHitCount());
+        assertEquals("/book.pdf", book.getPdfPath());
+    }
+
+    @Test
+    public void updateAndDeleteInvalidate() {
+        int bookId = (int) dbHelper.addBook("Title", "Author", "Description", "/cover.jpg", "/book.pdf");
+        long version = cache.getVersion();
+
+        // Null paths keep the stored ones, which a write-through of this object would lose
+        dbHelper.updateBook(new Book(bookId, "New title", "Author", "Description", null, null));
+        assertNotEquals(version, cache.getVersion());
+        Book updated = dbHelper.getBookById(bookId);
+        assertEquals("New title", updated.getTitle());
+        assertEquals("/cover.jpg", updated.getImagePath());
+
+        assertTrue(dbHelper.deleteBook(bookId));
+        assertNull(dbHelper.getBookById(bookId));
+    }
+
+    @Test
+    public void callersCannotChangeTheCachedCopy() {
+        int bookId = (int) dbHelper.addBook("Title", "Author", "Description", null, null);
+
+        dbHelper.getBookById(bookId).setTitle("Edited but not saved");
+        assertEquals("Title", dbHelper.getBookById(bookId).getTitle());
+    }
+
+    @Test
+    public void staleReadIsNotCached() {
+        Book stale = new Book(1, "Old", "Author", "Description", null, null);
+        long readVersion = cache.getVersion();
+        cache.onBookChanged(1);
+
+        cache.putIfUnchanged(stale, readVersion);
+        assertNull(cache.get(1));
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.bookgate;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Time and retained heap for materialising 50k list rows, once as full
+ * SELECT * Book rows (the old getAllBooks) and once as BookSummary rows.
+ * Results are written to logcat under the "DbBenchmark" tag. No results have
+ * been recorded for the switch to BookSummary; run this on a device before
+ * quoting any.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookSummaryBenchmark {
+
+    private static final String TAG = "DbBenchmark";
+    private static final String TEST_DB = "summary_benchmark.db";
+    private static final int ROWS = 50000;
+    private static final int DESCRIPTION_LENGTH = 1000;
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+
+        char[] filler = new char[DESCRIPTION_LENGTH];
+        Arrays.fill(filler, 'x');
+        String description = new String(filler);
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < ROWS; i++) {
+                values.put(DatabaseHelper.COLUMN_BOOK_TITLE, "Title " + i);
+                values.put(DatabaseHelper.COLUMN_BOOK_AUTHOR, "Author " + i);
+                values.put(DatabaseHelper.COLUMN_BOOK_DESCRIPTION, description);
+                values.put(DatabaseHelper.COLUMN_BOOK_IMAGE_PATH, "/data/covers/" + i + ".jpg");
+                values.put(DatabaseHelper.COLUMN_BOOK_PDF_PATH, "/data/pdfs/" + i + ".pdf");
+                db.insert(DatabaseHelper.TABLE_BOOKS, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void summaryRowsAreCheaperThanFullRows() {
+        // Warm up the page cache so neither run pays for the first read from disk
+        loadFullBooks(dbHelper.getReadableDatabase());
+
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        List<Book> fullBooks = loadFullBooks(dbHelper.getReadableDatabase());
+        long fullMillis = (System.nanoTime() - start) / 1000000;
+        long fullBytes = usedHeap() - heapBefore;
+        assertEquals(ROWS, fullBooks.size());
+        fullBooks = null;
+
+        heapBefore = usedHeap();
+        start = System.nanoTime();
+        List<BookSummary> summaries = dbHelper.getAllBookSummaries();
+        long summaryMillis = (System.nanoTime() - start) / 1000000;
+        long summaryBytes = usedHeap() - heapBefore;
+        assertEquals(ROWS, summaries.size());
+
+        Log.i(TAG, String.format("%d rows: full %d ms / %d KiB, summary %d ms / %d KiB",
+                ROWS, fullMillis, fullBytes / 1024, summaryMillis, summaryBytes / 1024));
+        assertTrue("summary rows used " + summaryBytes + " bytes, full rows " + fullBytes,
+                summaryBytes < fullBytes);
+    }
+
+    // The list query as it was: every column, indices looked up for every row
+    private static List<Book> loadFullBooks(SQLiteDatabase db) {
+        List<Book> books = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT * FROM " + DatabaseHelper.TABLE_BOOKS, null);
+        while (cursor.moveToNext()) {
+            books.add(new Book(
+                    cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_BOOK_ID)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_BOOK_TITLE)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_BOOK_AUTHOR)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_BOOK_DESCRIPTION)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_BOOK_IMAGE_PATH)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_BOOK_PDF_PATH))
+            ));
+        }
+        cursor.close();
+        return books;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
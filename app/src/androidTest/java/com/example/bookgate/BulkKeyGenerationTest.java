@@ -0,0 +1,72 @@
+package com.example.bookgate;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class BulkKeyGenerationTest {
+
+    private static final String TEST_DB = "bulk_keys_test.db";
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void generatesTenThousandUniqueKeysUnderOneSecond() {
+        int bookId = (int) dbHelper.addBook("Title", "Author", "Description", null, null);
+
+        long start = System.nanoTime();
+        List<String> keys = dbHelper.generateDownloadKeys(bookId, 10000);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        Log.i("DbBenchmark", "generated 10000 keys in " + elapsedMillis + " ms");
+
+        assertEquals(10000, keys.size());
+        Set<String> unique = new HashSet<>(keys);
+        assertEquals(10000, unique.size());
+        for (String key : keys) {
+            assertTrue(key, key.matches("[0-9A-HJKMNP-TV-Z]{" + DownloadKeyGenerator.KEY_LENGTH + "}"));
+        }
+        assertEquals(10000, DatabaseUtils.queryNumEntries(dbHelper.getReadableDatabase(),
+                DatabaseHelper.TABLE_DOWNLOAD_KEYS));
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis < 1000);
+    }
+
+    @Test
+    public void existingKeysAreNotDuplicated() {
+        int bookId = (int) dbHelper.addBook("Title", "Author", "Description", null, null);
+        List<String> first = dbHelper.generateDownloadKeys(bookId, 500);
+        List<String> second = dbHelper.generateDownloadKeys(bookId, 500);
+
+        Set<String> all = new HashSet<>(first);
+        all.addAll(second);
+        assertEquals(1000, all.size());
+    }
+}
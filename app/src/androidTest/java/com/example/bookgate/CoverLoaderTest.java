@@ -0,0 +1,166 @@
+package com.example.bookgate;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class CoverLoaderTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private Instrumentation instrumentation;
+    private Context context;
+    private File original;
+
+    @Before
+    public void setUp() throws IOException {
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+        context = instrumentation.getTargetContext();
+        original = new File(context.getCacheDir(), "cover_loader_test.jpg");
+        Bitmap bitmap = Bitmap.createBitmap(2000, 3000, Bitmap.Config.RGB_565);
+        bitmap.eraseColor(0xff993366);
+        try (FileOutputStream out = new FileOutputStream(original)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        }
+        bitmap.recycle();
+    }
+
+    @After
+    public void tearDown() {
+        original.delete();
+    }
+
+    @Test
+    public void loadsADownsampledCover() {
+        ImageView view = newImageView(200, 300);
+        instrumentation.runOnMainSync(() ->
+                CoverLoader.getInstance(context).load(original.getAbsolutePath(), view, R.drawable.ic_book));
+
+        Bitmap bitmap = awaitBitmap(view);
+        assertNotNull(bitmap);
+        // Sampled down to the view, not decoded at 2000x3000
+        assertTrue(bitmap.getWidth() >= 200 && bitmap.getWidth() < 500);
+
+        // A second view of the same size is served from memory straight away
+        ImageView other = newImageView(200, 300);
+        instrumentation.runOnMainSync(() -> {
+            CoverLoader.getInstance(context).load(original.getAbsolutePath(), other, R.drawable.ic_book);
+            assertSame(bitmap, ((BitmapDrawable) other.getDrawable()).getBitmap());
+        });
+    }
+
+    @Test
+    public void cancelledLoadLeavesThePlaceholder() {
+        ImageView view = newImageView(201, 301);
+        instrumentation.runOnMainSync(() -> {
+            CoverLoader loader = CoverLoader.getInstance(context);
+            loader.load(original.getAbsolutePath(), view, R.drawable.ic_book);
+            loader.cancel(view);
+        });
+
+        assertNull(awaitBitmap(view));
+    }
+
+    @Test
+    public void decodedCoversCanBePooledOnceReleased() {
+        ImageView view = newImageView(202, 302);
+        CoverLoader loader = CoverLoader.getInstance(context);
+        instrumentation.runOnMainSync(() -> loader.load(original.getAbsolutePath(), view, R.drawable.ic_book));
+
+        Bitmap bitmap = awaitBitmap(view);
+        assertNotNull(bitmap);
+        assertTrue(bitmap.isMutable());
+
+        instrumentation.runOnMainSync(() -> loader.release(view));
+        assertNull(view.getDrawable());
+    }
+
+    @Test
+    public void bindAfterPrefetchIsAHit() {
+        CoverLoader loader = CoverLoader.getInstance(context);
+        ImageView view = newImageView(203, 303);
+        long[] before = new long[2];
+        instrumentation.runOnMainSync(() -> {
+            before[0] = loader.getPrefetchCount();
+            before[1] = loader.getPrefetchHitCount();
+            loader.prefetch(original.getAbsolutePath(), 203, 303);
+            // A second request for the same cover is not queued again
+            loader.prefetch(original.getAbsolutePath(), 203, 303);
+        });
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT_MS;
+        int[] pending = {1};
+        while (pending[0] > 0 && SystemClock.uptimeMillis() < deadline) {
+            SystemClock.sleep(50);
+            instrumentation.runOnMainSync(() -> pending[0] = loader.getPendingPrefetchCount());
+        }
+
+        // The bind finds the cover in the memory cache, so it shows without waiting
+        instrumentation.runOnMainSync(() -> {
+            loader.load(original.getAbsolutePath(), view, R.drawable.ic_book);
+            assertTrue(view.getDrawable() instanceof BitmapDrawable);
+        });
+        instrumentation.runOnMainSync(() -> {
+            assertEquals(before[0] + 1, loader.getPrefetchCount());
+            assertEquals(before[1] + 1, loader.getPrefetchHitCount());
+        });
+    }
+
+    @Test
+    public void cancelledPrefetchesAreCounted() {
+        CoverLoader loader = CoverLoader.getInstance(context);
+        instrumentation.runOnMainSync(() -> {
+            long cancelled = loader.getPrefetchCancelledCount();
+            loader.prefetch(original.getAbsolutePath(), 204, 304);
+            loader.cancelPrefetches();
+            assertEquals(cancelled + 1, loader.getPrefetchCancelledCount());
+        });
+    }
+
+    private ImageView newImageView(int width, int height) {
+        ImageView[] view = new ImageView[1];
+        instrumentation.runOnMainSync(() -> {
+            view[0] = new ImageView(context);
+            view[0].setLayoutParams(new ViewGroup.LayoutParams(width, height));
+        });
+        return view[0];
+    }
+
+    // Waits for a decoded cover; null if the view still shows something else after the timeout
+    private Bitmap awaitBitmap(ImageView view) {
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT_MS;
+        Bitmap[] bitmap = new Bitmap[1];
+        while (SystemClock.uptimeMillis() < deadline) {
+            instrumentation.runOnMainSync(() -> {
+                Drawable drawable = view.getDrawable();
+                if (drawable instanceof BitmapDrawable) {
+                    bitmap[0] = ((BitmapDrawable) drawable).getBitmap();
+                }
+            });
+            if (bitmap[0] != null) {
+                return bitmap[0];
+            }
+            SystemClock.sleep(50);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.bookgate;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.DisplayMetrics;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class CoverThumbnailsTest {
+
+    private Context context;
+    private File original;
+
+    @Before
+    public void setUp() throws IOException {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        original = new File(context.getCacheDir(), "cover_test.jpg");
+        // A camera-sized portrait cover
+        Bitmap bitmap = Bitmap.createBitmap(3000, 4000, Bitmap.Config.RGB_565);
+        bitmap.eraseColor(0xff336699);
+        try (FileOutputStream out = new FileOutputStream(original)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        }
+        bitmap.recycle();
+    }
+
+    @After
+    public void tearDown() {
+        original.delete();
+        new File(context.getCacheDir(), "cover_test_grid.jpg").delete();
+        new File(context.getCacheDir(), "cover_test_detail.jpg").delete();
+    }
+
+    @Test
+    public void writesBothSizesNextToTheOriginal() {
+        CoverThumbnails.Paths paths = CoverThumbnails.generate(context, original.getAbsolutePath());
+        assertNotNull(paths);
+        assertEquals(new File(context.getCacheDir(), "cover_test_grid.jpg").getAbsolutePath(), paths.thumbnailPath);
+        assertEquals(new File(context.getCacheDir(), "cover_test_detail.jpg").getAbsolutePath(), paths.detailImagePath);
+
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        int screenWidth = Math.min(metrics.widthPixels, metrics.heightPixels);
+
+        BitmapFactory.Options grid = bounds(paths.thumbnailPath);
+        BitmapFactory.Options detail = bounds(paths.detailImagePath);
+        // Wide enough to fill the view, and no wider than needed
+        assertEquals(screenWidth / 2, grid.outWidth, 1);
+        assertEquals(screenWidth, detail.outWidth, 1);
+        assertEquals(3f / 4, (float) grid.outWidth / grid.outHeight, 0.01f);
+        assertTrue(new File(paths.thumbnailPath).length() < original.length());
+    }
+
+    @Test
+    public void placeholderColorMatchesTheCover() {
+        CoverThumbnails.Paths paths = CoverThumbnails.generate(context, original.getAbsolutePath());
+        assertNotNull(paths);
+        // JPEG and RGB_565 shift the channels a little
+        assertEquals(0xff, paths.placeholderColor >>> 24);
+        assertEquals(0x33, (paths.placeholderColor >> 16) & 0xff, 8);
+        assertEquals(0x66, (paths.placeholderColor >> 8) & 0xff, 8);
+        assertEquals(0x99, paths.placeholderColor & 0xff, 8);
+    }
+
+    @Test
+    public void dominantColorIsTheMostCommonOne() {
+        int[] pixels = new int[100];
+        Arrays.fill(pixels, 0, 60, 0xff204080);
+        Arrays.fill(pixels, 60, 100, 0xfff0f0f0);
+        assertEquals(0xff204080, CoverThumbnails.dominantColor(pixels));
+
+        // Transparent pixels don't count, unless there is nothing else
+        Arrays.fill(pixels, 0, 60, 0x00000000);
+        assertEquals(0xfff0f0f0, CoverThumbnails.dominantColor(pixels));
+        Arrays.fill(pixels, 0x00102030);
+        assertEquals(0xff102030, CoverThumbnails.dominantColor(pixels));
+    }
+
+    @Test
+    public void missingOriginalGivesNoPaths() {
+        assertNull(CoverThumbnails.generate(context, new File(context.getCacheDir(), "missing.jpg").getAbsolutePath()));
+        assertNull(CoverThumbnails.generate(context, null));
+    }
+
+    @Test
+    public void sampleSizeStaysAtOrAboveTarget() {
+        assertEquals(1, CoverThumbnails.sampleSize(1000, 1000, 600, 600));
+        assertEquals(2, CoverThumbnails.sampleSize(1000, 1000, 500, 500));
+        assertEquals(8, CoverThumbnails.sampleSize(3000, 4000, 360, 480));
+        assertEquals(4, CoverThumbnails.sampleSize(3000, 4000, 540, 480));
+    }
+
+    private static BitmapFactory.Options bounds(String path) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        return options;
+    }
+}
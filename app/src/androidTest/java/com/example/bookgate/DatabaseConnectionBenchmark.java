@@ -0,0 +1,82 @@
+package com.example.bookgate;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Per-operation latency of a write followed by a read, with the old
+ * open/close-per-write rollback-journal setup and with the shared WAL
+ * connection. Results are written to logcat under the "DbBenchmark" tag.
+ * No results have been recorded for the switch to the shared connection;
+ * run this on a device before quoting any.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseConnectionBenchmark {
+
+    private static final String TAG = "DbBenchmark";
+    private static final String BEFORE_DB = "benchmark_before.db";
+    private static final String AFTER_DB = "benchmark_after.db";
+    private static final int OPERATIONS = 200;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(BEFORE_DB);
+        context.deleteDatabase(AFTER_DB);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(BEFORE_DB);
+        context.deleteDatabase(AFTER_DB);
+    }
+
+    @Test
+    public void writeThenReadLatency() {
+        // The old setup: default journal, no pragmas, connection closed after every write
+        DatabaseHelper before = new DatabaseHelper(context, BEFORE_DB) {
+            @Override
+            public void onConfigure(SQLiteDatabase db) {
+            }
+        };
+        before.setWriteAheadLoggingEnabled(false);
+        double beforeMicros = measure(before, true);
+        before.close();
+
+        DatabaseHelper after = new DatabaseHelper(context, AFTER_DB);
+        double afterMicros = measure(after, false);
+        after.close();
+
+        Log.i(TAG, String.format("write+read per operation: before %.1f us, after %.1f us (%.1fx)",
+                beforeMicros, afterMicros, beforeMicros / afterMicros));
+    }
+
+    private double measure(DatabaseHelper dbHelper, boolean closeAfterWrite) {
+        // Warm up schema creation so it is not counted
+        dbHelper.getReadableDatabase();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            long id = dbHelper.addBook("Title " + i, "Author " + i, "Description " + i, null, null);
+            if (closeAfterWrite) {
+                dbHelper.close();
+            }
+            Book book = dbHelper.getBookById((int) id);
+            assertNotNull(book);
+        }
+        return (System.nanoTime() - start) / 1000.0 / OPERATIONS;
+    }
+}
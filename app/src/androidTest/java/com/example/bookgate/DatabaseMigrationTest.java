@@ -0,0 +1,178 @@
+package com.example.bookgate;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Upgrades a populated version 1 database and checks that nothing is lost
+ * and that the result matches a freshly created database.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseMigrationTest {
+
+    private static final String UPGRADED_DB = "migration_upgraded.db";
+    private static final String FRESH_DB = "migration_fresh.db";
+
+    private static final int USERS = 20;
+    private static final int BOOKS = 50;
+    private static final int KEYS_PER_BOOK = 10;
+
+    // The schema exactly as version 1 shipped it
+    private static final String[] VERSION_1_SCHEMA = {
+            "CREATE TABLE users(id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, email TEXT UNIQUE, "
+                    + "password TEXT, role TEXT)",
+            "CREATE TABLE books(id INTEGER PRIMARY KEY AUTOINCREMENT, title TEXT, author TEXT, "
+                    + "description TEXT, image_path TEXT, pdf_path TEXT)",
+            "CREATE TABLE download_keys(id INTEGER PRIMARY KEY AUTOINCREMENT, book_id INTEGER, "
+                    + "key_value TEXT UNIQUE, FOREIGN KEY(book_id) REFERENCES books(id))"
+    };
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(UPGRADED_DB);
+        context.deleteDatabase(FRESH_DB);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(UPGRADED_DB);
+        context.deleteDatabase(FRESH_DB);
+    }
+
+    @Test
+    public void upgradeFromVersion1KeepsAllRows() {
+        createVersion1Database();
+
+        DatabaseHelper dbHelper = new DatabaseHelper(context, UPGRADED_DB);
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        assertEquals(USERS, DatabaseUtils.queryNumEntries(db, DatabaseHelper.TABLE_USERS));
+        assertEquals(BOOKS, DatabaseUtils.queryNumEntries(db, DatabaseHelper.TABLE_BOOKS));
+        assertEquals(BOOKS * KEYS_PER_BOOK, DatabaseUtils.queryNumEntries(db, DatabaseHelper.TABLE_DOWNLOAD_KEYS));
+
+        Book book = dbHelper.getBookById(7);
+        assertNotNull(book);
+        assertEquals("Title 7", book.getTitle());
+        assertTrue(dbHelper.isValidKey("KEY-7-3", 7));
+
+        // Key counters are backfilled from the existing keys. Covers have no downsampled
+        // copies or colors yet, so lists fall back to the original and the icon.
+        for (BookSummary summary : dbHelper.getAllBookSummaries()) {
+            assertEquals(KEYS_PER_BOOK, summary.getKeysOutstanding());
+            assertEquals(0, summary.getKeysRedeemed());
+            assertNull(summary.getThumbnailPath());
+            assertEquals(summary.getImagePath(), summary.getListCoverPath());
+            assertEquals(0, summary.getCoverColor());
+        }
+        assertEquals(BOOKS, dbHelper.getBookIdsWithoutThumbnails().size());
+
+        // Books that existed before the upgrade are searchable
+        List<BookSummary> results = dbHelper.searchBooks("Description 42", 10);
+        assertFalse(results.isEmpty());
+        assertEquals(42, results.get(0).getId());
+
+        dbHelper.close();
+    }
+
+    @Test
+    public void upgradedSchemaMatchesFreshSchema() {
+        createVersion1Database();
+
+        DatabaseHelper upgraded = new DatabaseHelper(context, UPGRADED_DB);
+        DatabaseHelper fresh = new DatabaseHelper(context, FRESH_DB);
+
+        assertEquals(schemaOf(fresh.getReadableDatabase()), schemaOf(upgraded.getReadableDatabase()));
+
+        upgraded.close();
+        fresh.close();
+    }
+
+    @Test
+    public void keyLookupsUseAnIndexAfterUpgrade() {
+        createVersion1Database();
+
+        DatabaseHelper upgraded = new DatabaseHelper(context, UPGRADED_DB);
+        DatabaseHelper fresh = new DatabaseHelper(context, FRESH_DB);
+
+        // The WHERE clauses of redeemKey and deleteKey, which filter on key_value first
+        for (DatabaseHelper dbHelper : new DatabaseHelper[]{upgraded, fresh}) {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            assertUsesIndex(db, "SELECT id FROM download_keys WHERE key_value = 'KEY-1-1'");
+            assertUsesIndex(db, "SELECT id FROM download_keys WHERE key_value = 'KEY-1-1' AND book_id = 1 "
+                    + "AND redeemed = 0");
+        }
+
+        upgraded.close();
+        fresh.close();
+    }
+
+    private static void assertUsesIndex(SQLiteDatabase db, String query) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + query, null);
+        StringBuilder plan = new StringBuilder();
+        while (cursor.moveToNext()) {
+            plan.append(cursor.getString(cursor.getColumnCount() - 1)).append('\n');
+        }
+        cursor.close();
+        assertTrue(plan.toString(), plan.toString().contains("USING INDEX")
+                || plan.toString().contains("USING COVERING INDEX"));
+    }
+
+    private void createVersion1Database() {
+        SQLiteDatabase db = context.openOrCreateDatabase(UPGRADED_DB, Context.MODE_PRIVATE, null);
+        for (String statement : VERSION_1_SCHEMA) {
+            db.execSQL(statement);
+        }
+
+        db.beginTransaction();
+        try {
+            for (int i = 1; i <= USERS; i++) {
+                db.execSQL("INSERT INTO users(name, email, password, role) VALUES(?, ?, ?, ?)",
+                        new Object[]{"User " + i, "user" + i + "@example.com", "secret" + i, "Member"});
+            }
+            for (int i = 1; i <= BOOKS; i++) {
+                db.execSQL("INSERT INTO books(title, author, description, image_path, pdf_path) VALUES(?, ?, ?, ?, ?)",
+                        new Object[]{"Title " + i, "Author " + i, "Description " + i, "/covers/" + i + ".jpg",
+                                "/pdfs/" + i + ".pdf"});
+                for (int k = 0; k < KEYS_PER_BOOK; k++) {
+                    db.execSQL("INSERT INTO download_keys(book_id, key_value) VALUES(?, ?)",
+                            new Object[]{i, "KEY-" + i + "-" + k});
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        db.setVersion(1);
+        db.close();
+    }
+
+    private static List<String> schemaOf(SQLiteDatabase db) {
+        List<String> schema = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT type, name, tbl_name FROM sqlite_master "
+                + "WHERE name NOT LIKE 'sqlite_%' AND name != 'android_metadata' ORDER BY type, name", null);
+        while (cursor.moveToNext()) {
+            schema.add(cursor.getString(0) + " " + cursor.getString(1) + " on " + cursor.getString(2));
+        }
+        cursor.close();
+        return schema;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.bookgate;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class ImageImporterTest {
+
+    private Context context;
+    private File source;
+    private File destination;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        source = new File(context.getCacheDir(), "import_source.jpg");
+        destination = new File(context.getCacheDir(), "import_destination.jpg");
+    }
+
+    @After
+    public void tearDown() {
+        source.delete();
+        destination.delete();
+    }
+
+    @Test
+    public void largeImageIsSampledUnderTheLimit() throws IOException {
+        writeJpeg(source, 4000, 3000);
+
+        String path = ImageImporter.importNow(context.getContentResolver(), Uri.fromFile(source), destination);
+
+        assertEquals(destination.getAbsolutePath(), path);
+        BitmapFactory.Options bounds = bounds(destination);
+        assertEquals(2000, bounds.outWidth);
+        assertEquals(1500, bounds.outHeight);
+    }
+
+    @Test
+    public void exifOrientationIsApplied() throws IOException {
+        writeJpeg(source, 1200, 800);
+        ExifInterface exif = new ExifInterface(source.getAbsolutePath());
+        exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(ExifInterface.ORIENTATION_ROTATE_90));
+        exif.saveAttributes();
+
+        ImageImporter.importNow(context.getContentResolver(), Uri.fromFile(source), destination);
+
+        BitmapFactory.Options bounds = bounds(destination);
+        assertEquals(800, bounds.outWidth);
+        assertEquals(1200, bounds.outHeight);
+    }
+
+    @Test
+    public void nonImageGivesNull() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(source)) {
+            out.write("not an image".getBytes());
+        }
+        assertNull(ImageImporter.importNow(context.getContentResolver(), Uri.fromFile(source), destination));
+        assertFalse(destination.exists());
+    }
+
+    @Test
+    public void sampleSize() {
+        assertEquals(1, ImageImporter.sampleSize(2048, 1536, 2048));
+        assertEquals(2, ImageImporter.sampleSize(2049, 1536, 2048));
+        // 48 MP
+        assertEquals(4, ImageImporter.sampleSize(8000, 6000, 2048));
+        assertNull(ImageImporter.orientationMatrix(ExifInterface.ORIENTATION_NORMAL));
+        assertNotNull(ImageImporter.orientationMatrix(ExifInterface.ORIENTATION_TRANSPOSE));
+    }
+
+    private static void writeJpeg(File file, int width, int height) throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        bitmap.eraseColor(0xff224466);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        }
+        bitmap.recycle();
+    }
+
+    private static BitmapFactory.Options bounds(File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        return options;
+    }
+}
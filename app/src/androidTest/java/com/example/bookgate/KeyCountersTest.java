@@ -0,0 +1,84 @@
+package com.example.bookgate;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the per-book key counters read by the admin list follow every
+ * kind of key write.
+ */
+@RunWith(AndroidJUnit4.class)
+public class KeyCountersTest {
+
+    private static final String TEST_DB = "key_counters_test.db";
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void countersFollowKeyWrites() {
+        int bookId = (int) dbHelper.addBook("Title", "Author", "Description", null, null);
+        int otherBookId = (int) dbHelper.addBook("Other", "Author", "Description", null, null);
+
+        List<String> keys = dbHelper.generateDownloadKeys(bookId, 10);
+        dbHelper.addDownloadKey(bookId, "MANUAL");
+        dbHelper.generateDownloadKeys(otherBookId, 3);
+        assertCounts(bookId, 11, 0);
+        assertCounts(otherBookId, 3, 0);
+
+        assertTrue(dbHelper.redeemKey(keys.get(0), bookId));
+        assertTrue(dbHelper.redeemKey(keys.get(1), bookId));
+        assertFalse(dbHelper.redeemKey(keys.get(1), bookId));
+        assertCounts(bookId, 9, 2);
+
+        dbHelper.deleteKey("MANUAL");
+        assertCounts(bookId, 8, 2);
+        assertCounts(otherBookId, 3, 0);
+    }
+
+    @Test
+    public void redeemedKeysAreNotListedOrReissued() {
+        int bookId = (int) dbHelper.addBook("Title", "Author", "Description", null, null);
+        dbHelper.addDownloadKey(bookId, "USED");
+        assertTrue(dbHelper.redeemKey("USED", bookId));
+
+        assertTrue(dbHelper.getKeysPage(bookId, "", null, 50).isEmpty());
+        assertFalse(dbHelper.isValidKey("USED", bookId));
+        assertEquals(-1, dbHelper.addDownloadKey(bookId, "USED"));
+    }
+
+    private void assertCounts(int bookId, int outstanding, int redeemed) {
+        for (BookSummary book : dbHelper.getAllBookSummaries()) {
+            if (book.getId() == bookId) {
+                assertEquals("outstanding", outstanding, book.getKeysOutstanding());
+                assertEquals("redeemed", redeemed, book.getKeysRedeemed());
+                return;
+            }
+        }
+        fail("book " + bookId + " not listed");
+    }
+}
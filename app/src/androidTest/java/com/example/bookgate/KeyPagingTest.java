@@ -0,0 +1,94 @@
+package com.example.bookgate;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class KeyPagingTest {
+
+    private static final String TEST_DB = "key_paging_test.db";
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void pagesCoverOneBookInKeyOrder() {
+        int bookId = (int) dbHelper.addBook("Title", "Author", "Description", null, null);
+        int otherBookId = (int) dbHelper.addBook("Other", "Author", "Description", null, null);
+        List<String> expected = new ArrayList<>(dbHelper.generateDownloadKeys(bookId, 230));
+        dbHelper.generateDownloadKeys(otherBookId, 100);
+        Collections.sort(expected);
+
+        List<String> paged = new ArrayList<>();
+        String afterKey = null;
+        List<DownloadKey> page;
+        do {
+            page = dbHelper.getKeysPage(bookId, "", afterKey, 50);
+            for (DownloadKey key : page) {
+                assertEquals(bookId, key.getBookId());
+                assertEquals("Title", key.getBookTitle());
+                paged.add(key.getKeyValue());
+            }
+            if (!page.isEmpty()) {
+                afterKey = page.get(page.size() - 1).getKeyValue();
+            }
+        } while (page.size() == 50);
+
+        assertEquals(expected, paged);
+    }
+
+    @Test
+    public void prefixLimitsTheRange() {
+        int bookId = (int) dbHelper.addBook("Title", "Author", "Description", null, null);
+        for (String key : new String[]{"AB1", "AB2", "AC1", "A", "B", "ab1"}) {
+            dbHelper.addDownloadKey(bookId, key);
+        }
+
+        List<String> values = new ArrayList<>();
+        for (DownloadKey key : dbHelper.getKeysPage(bookId, "AB", null, 50)) {
+            values.add(key.getKeyValue());
+        }
+        assertEquals(Arrays.asList("AB1", "AB2"), values);
+
+        values.clear();
+        for (DownloadKey key : dbHelper.getKeysPage(bookId, "AB", "AB1", 50)) {
+            values.add(key.getKeyValue());
+        }
+        assertEquals(Arrays.asList("AB2"), values);
+    }
+
+    @Test
+    public void prefixUpperBound() {
+        assertNull(DatabaseHelper.prefixUpperBound(""));
+        assertEquals("AC", DatabaseHelper.prefixUpperBound("AB"));
+        assertEquals("B", DatabaseHelper.prefixUpperBound("A" + Character.MAX_VALUE));
+        assertNull(DatabaseHelper.prefixUpperBound(String.valueOf(Character.MAX_VALUE)));
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.bookgate;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fires many threads at a small pool of one-time keys and checks that each
+ * key is redeemed exactly once.
+ */
+@RunWith(AndroidJUnit4.class)
+public class KeyRedemptionStressTest {
+
+    private static final String TEST_DB = "redemption_test.db";
+    private static final int KEYS = 8;
+    private static final int THREADS = 32;
+    private static final int ROUNDS = 20;
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void eachKeyIsRedeemedExactlyOnce() throws Exception {
+        int bookId = (int) dbHelper.addBook("Title", "Author", "Description", null, null);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            List<String> keys = dbHelper.generateDownloadKeys(bookId, KEYS);
+            AtomicIntegerArray redemptions = new AtomicIntegerArray(KEYS);
+            CountDownLatch start = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(THREADS);
+
+            for (int t = 0; t < THREADS; t++) {
+                final long seed = round * THREADS + t;
+                pool.execute(() -> {
+                    // Every thread tries every key, in its own order
+                    List<Integer> order = new ArrayList<>();
+                    for (int i = 0; i < KEYS; i++) {
+                        order.add(i);
+                    }
+                    Collections.shuffle(order, new Random(seed));
+                    try {
+                        start.await();
+                        for (int i : order) {
+                            if (dbHelper.redeemKey(keys.get(i), bookId)) {
+                                redemptions.incrementAndGet(i);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+
+            start.countDown();
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            for (int i = 0; i < KEYS; i++) {
+                assertEquals("key " + keys.get(i) + " in round " + round, 1, redemptions.get(i));
+                assertFalse(dbHelper.isValidKey(keys.get(i), bookId));
+            }
+        }
+
+        pool.shutdown();
+    }
+
+    @Test
+    public void keyForAnotherBookIsNotConsumed() {
+        int bookId = (int) dbHelper.addBook("Title", "Author", "Description", null, null);
+        int otherBookId = (int) dbHelper.addBook("Other", "Author", "Description", null, null);
+        String key = dbHelper.generateDownloadKeys(bookId, 1).get(0);
+
+        assertFalse(dbHelper.redeemKey(key, otherBookId));
+        assertTrue(dbHelper.isValidKey(key, bookId));
+        assertTrue(dbHelper.redeemKey(key, bookId));
+        assertFalse(dbHelper.redeemKey(key, bookId));
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.bookgate;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class KeyValidationTest {
+
+    private static final String TEST_DB = "key_validation_test.db";
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+    private int bookId;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+        bookId = (int) dbHelper.addBook("Title", "Author", "Description", null, null);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void filterKeepsEveryLiveKeyValid() {
+        List<String> before = dbHelper.generateDownloadKeys(bookId, 500);
+        KeyFilter filter = dbHelper.rebuildKeyFilter();
+        List<String> after = dbHelper.generateDownloadKeys(bookId, 500);
+        dbHelper.addDownloadKey(bookId, "MANUAL");
+
+        for (String key : before) {
+            assertTrue(dbHelper.isValidKey(key, bookId));
+        }
+        for (String key : after) {
+            assertTrue(dbHelper.isValidKey(key, bookId));
+        }
+        assertTrue(dbHelper.isValidKey("MANUAL", bookId));
+        assertEquals(1001, filter.getInsertions());
+    }
+
+    @Test
+    public void mistypedKeysAreRejectedByTheFilter() {
+        dbHelper.generateDownloadKeys(bookId, 1000);
+        KeyFilter filter = dbHelper.rebuildKeyFilter();
+
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(dbHelper.isValidKey("TYPO" + i, bookId));
+            assertFalse(dbHelper.redeemKey("TYPO" + i, bookId));
+        }
+        // At 1% false positives nearly all of them never reached the database
+        assertTrue(filter.getRejectionCount() > 1900);
+        assertTrue(filter.getMemoryBytes() > 0);
+    }
+
+    @Test
+    public void removedKeysTriggerARebuild() {
+        List<String> keys = dbHelper.generateDownloadKeys(bookId, 100);
+        dbHelper.rebuildKeyFilter();
+
+        // A quarter of the filter may be removed keys; one more asks for a rebuild
+        for (int i = 0; i < 25; i++) {
+            assertTrue(dbHelper.redeemKey(keys.get(i), bookId));
+        }
+        assertFalse(dbHelper.keyFilterNeedsRebuild());
+        dbHelper.deleteKey(keys.get(25));
+        assertTrue(dbHelper.keyFilterNeedsRebuild());
+
+        KeyFilter rebuilt = dbHelper.rebuildKeyFilter();
+        assertFalse(dbHelper.keyFilterNeedsRebuild());
+        assertEquals(0, rebuilt.getRemovals());
+        assertFalse(dbHelper.isValidKey(keys.get(0), bookId));
+        assertTrue(dbHelper.isValidKey(keys.get(99), bookId));
+    }
+
+    @Test
+    public void keysAddedDuringARebuildStayValid() throws InterruptedException {
+        // Enough keys that each scan takes a while
+        dbHelper.generateDownloadKeys(bookId, 20000);
+        dbHelper.rebuildKeyFilter();
+
+        AtomicBoolean done = new AtomicBoolean();
+        Thread rebuilds = new Thread(() -> {
+            while (!done.get()) {
+                dbHelper.rebuildKeyFilter();
+            }
+        });
+        rebuilds.start();
+        List<String> added = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2000; i++) {
+                String key = "RACE" + i;
+                dbHelper.addDownloadKey(bookId, key);
+                added.add(key);
+            }
+        } finally {
+            done.set(true);
+            rebuilds.join();
+        }
+
+        // Whichever filter won the last swap must hold every key added meanwhile
+        KeyFilter filter = dbHelper.getKeyFilter();
+        for (String key : added) {
+            assertTrue(key, filter.mightContain(key));
+        }
+    }
+
+    @Test
+    public void deletingABookCountsOnlyUnredeemedKeys() {
+        List<String> keys = dbHelper.generateDownloadKeys(bookId, 100);
+        int otherBook = (int) dbHelper.addBook("Other", "Author", "Description", null, null);
+        List<String> otherKeys = dbHelper.generateDownloadKeys(otherBook, 10);
+        for (String key : otherKeys) {
+            assertTrue(dbHelper.redeemKey(key, otherBook));
+        }
+        KeyFilter filter = dbHelper.rebuildKeyFilter();
+
+        // The redeemed keys are already out of the filter
+        dbHelper.deleteBook(otherBook);
+        assertEquals(0, filter.getRemovals());
+        dbHelper.deleteKey(keys.get(0));
+        assertEquals(1, filter.getRemovals());
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.bookgate;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 100k key and librarian-role lookups, once built and queried through a Cursor per
+ * call as before and once through the helper's cached compiled statements.
+ * Results are written to logcat under the "DbBenchmark" tag. No results have
+ * been recorded for the switch to compiled statements; run this on a device
+ * before quoting any.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LookupBenchmark {
+
+    private static final String TAG = "DbBenchmark";
+    private static final String TEST_DB = "lookup_benchmark.db";
+    private static final int LOOKUPS = 100000;
+    private static final int KEYS = 1000;
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+    private int bookId;
+    private List<String> keys;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+        bookId = (int) dbHelper.addBook("Title", "Author", "Description", null, null);
+        keys = dbHelper.generateDownloadKeys(bookId, KEYS);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void isValidKeyLookups() {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            assertTrue(isValidKeyWithCursor(db, keys.get(i % KEYS), bookId));
+        }
+        double beforeMicros = (System.nanoTime() - start) / 1000.0 / LOOKUPS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            assertTrue(dbHelper.isValidKey(keys.get(i % KEYS), bookId));
+        }
+        double afterMicros = (System.nanoTime() - start) / 1000.0 / LOOKUPS;
+
+        Log.i(TAG, String.format("isValidKey x%d: before %.1f us, after %.1f us (%.1fx)",
+                LOOKUPS, beforeMicros, afterMicros, beforeMicros / afterMicros));
+    }
+
+    @Test
+    public void isUserAdminLookups() {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        String email = DatabaseHelper.DEFAULT_ADMIN_EMAIL;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            assertTrue(isUserAdminWithCursor(db, email));
+        }
+        double beforeMicros = (System.nanoTime() - start) / 1000.0 / LOOKUPS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            assertTrue(dbHelper.isUserAdmin(email));
+        }
+        double afterMicros = (System.nanoTime() - start) / 1000.0 / LOOKUPS;
+
+        Log.i(TAG, String.format("isUserAdmin x%d: before %.1f us, after %.1f us (%.1fx)",
+                LOOKUPS, beforeMicros, afterMicros, beforeMicros / afterMicros));
+    }
+
+    // The lookups as they were: SQL rebuilt by query() and a Cursor per call
+    private static boolean isValidKeyWithCursor(SQLiteDatabase db, String keyValue, int bookId) {
+        Cursor cursor = db.query(DatabaseHelper.TABLE_DOWNLOAD_KEYS,
+                new String[]{DatabaseHelper.COLUMN_KEY_ID},
+                DatabaseHelper.COLUMN_KEY_VALUE + "=? AND " + DatabaseHelper.COLUMN_KEY_BOOK_ID + "=? AND "
+                        + DatabaseHelper.COLUMN_KEY_REDEEMED + "=0",
+                new String[]{keyValue, String.valueOf(bookId)},
+                null, null, null);
+        boolean isValid = cursor.getCount() > 0;
+        cursor.close();
+        return isValid;
+    }
+
+    private static boolean isUserAdminWithCursor(SQLiteDatabase db, String email) {
+        Cursor cursor = db.query(DatabaseHelper.TABLE_USERS,
+                new String[]{DatabaseHelper.COLUMN_USER_ID},
+                DatabaseHelper.COLUMN_USER_EMAIL + "=? AND " + DatabaseHelper.COLUMN_USER_ROLE + "=?",
+                new String[]{email, DatabaseHelper.ROLE_LIBRARIAN},
+                null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count > 0;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.bookgate;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class MediaSweeperTest {
+
+    private static final long NOW = System.currentTimeMillis();
+    private static final long OLD = NOW - MediaSweeper.GRACE_PERIOD_MS - 1000;
+
+    private File covers;
+    private File pdfs;
+    private File source;
+    private PdfStore store;
+    private MediaSweeper sweeper;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        covers = new File(context.getCacheDir(), "media_sweeper_covers");
+        pdfs = new File(context.getCacheDir(), "media_sweeper_pdfs");
+        source = new File(context.getCacheDir(), "media_sweeper_source.pdf");
+        covers.mkdirs();
+        store = new PdfStore(FileImporter.getInstance(context), pdfs);
+        sweeper = new MediaSweeper(covers, store);
+    }
+
+    @After
+    public void tearDown() {
+        for (File directory : new File[]{covers, pdfs}) {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+        source.delete();
+    }
+
+    @Test
+    public void deletesOldUnreferencedFilesAndReportsTheirSize() throws IOException {
+        File kept = file(covers, "kept.jpg", 100, OLD);
+        File orphan = file(covers, "orphan.jpg", 300, OLD);
+        File part = file(pdfs, "import1.part", 50, OLD);
+
+        long reclaimed = sweeper.sweep(Collections.singleton(kept.getAbsolutePath()), NOW);
+
+        assertEquals(350, reclaimed);
+        assertEquals(2, sweeper.getFilesDeleted());
+        assertTrue(kept.exists());
+        assertFalse(orphan.exists());
+        assertFalse(part.exists());
+    }
+
+    @Test
+    public void recentFilesAreLeftForTheirImport() throws IOException {
+        File capture = file(covers, "JPEG_capture.jpg", 100, NOW - 1000);
+        File part = file(pdfs, "import2.part", 100, NOW);
+
+        assertEquals(0, sweeper.sweep(Collections.emptySet(), NOW));
+        assertTrue(capture.exists());
+        assertTrue(part.exists());
+    }
+
+    @Test
+    public void pendingPdfsAreKept() throws Exception {
+        try (FileOutputStream out = new FileOutputStream(source)) {
+            out.write("%PDF-1.4\nsweep\n%%EOF\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        // Imported the way the add and edit screens do, so the screen's claim is held
+        AtomicReference<String> imported = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        store.importPdf(Uri.fromFile(source), null, result -> {
+            imported.set(result);
+            done.countDown();
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        String path = imported.get();
+        // Deduplicated content can be much older than the import that claimed it
+        new File(path).setLastModified(OLD);
+        Set<String> referenced = new HashSet<>();
+
+        assertEquals(0, sweeper.sweep(referenced, NOW));
+        assertTrue(new File(path).exists());
+
+        store.release(path);
+        assertTrue(sweeper.sweep(referenced, NOW) > 0);
+        assertFalse(new File(path).exists());
+    }
+
+    private static File file(File directory, String name, int length, long lastModified) throws IOException {
+        directory.mkdirs();
+        File file = new File(directory, name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[length]);
+        }
+        file.setLastModified(lastModified);
+        return file;
+    }
+}
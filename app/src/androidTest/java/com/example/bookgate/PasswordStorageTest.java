@@ -0,0 +1,75 @@
+package com.example.bookgate;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class PasswordStorageTest {
+
+    private static final String TEST_DB = "password_storage_test.db";
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void newUsersAreStoredHashed() {
+        dbHelper.addUser("Reader", "reader@example.com", "secret", DatabaseHelper.ROLE_MEMBER);
+
+        String stored = dbHelper.getUserByEmail("reader@example.com").getPassword();
+        assertNotEquals("secret", stored);
+        assertTrue(PasswordHasher.isHashed(stored));
+        assertNotNull(dbHelper.authenticate("reader@example.com", "secret"));
+        assertNull(dbHelper.authenticate("reader@example.com", "wrong"));
+    }
+
+    @Test
+    public void legacyRowIsUpgradedOnLogin() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(DatabaseHelper.COLUMN_USER_NAME, "Old");
+        values.put(DatabaseHelper.COLUMN_USER_EMAIL, "old@example.com");
+        values.put(DatabaseHelper.COLUMN_USER_PASSWORD, "plain");
+        values.put(DatabaseHelper.COLUMN_USER_ROLE, DatabaseHelper.ROLE_MEMBER);
+        db.insert(DatabaseHelper.TABLE_USERS, null, values);
+
+        // A failed login leaves the row alone
+        assertNull(dbHelper.authenticate("old@example.com", "wrong"));
+        assertEquals("plain", dbHelper.getUserByEmail("old@example.com").getPassword());
+
+        assertNotNull(dbHelper.authenticate("old@example.com", "plain"));
+        String stored = dbHelper.getUserByEmail("old@example.com").getPassword();
+        assertTrue(PasswordHasher.isHashed(stored));
+        assertNotNull(dbHelper.authenticate("old@example.com", "plain"));
+    }
+
+    @Test
+    public void defaultAdminIsUpgradedOnLogin() {
+        assertNotNull(dbHelper.authenticate(DatabaseHelper.DEFAULT_ADMIN_EMAIL, DatabaseHelper.DEFAULT_ADMIN_PASSWORD));
+        String stored = dbHelper.getUserByEmail(DatabaseHelper.DEFAULT_ADMIN_EMAIL).getPassword();
+        assertTrue(PasswordHasher.isHashed(stored));
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.bookgate;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class PdfStoreTest {
+
+    private Context context;
+    private File directory;
+    // Picked document; outside the store, so it never counts as a stored copy
+    private File source;
+    private PdfStore store;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        directory = new File(context.getCacheDir(), "pdf_store_test");
+        source = new File(context.getCacheDir(), "pdf_store_test_source.pdf");
+        store = new PdfStore(FileImporter.getInstance(context), directory);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        source.delete();
+    }
+
+    @Test
+    public void storesUnderTheContentDigest() throws Exception {
+        byte[] content = pdf("one");
+        String path = importPdf(content);
+
+        String digest = PdfStore.toHex(MessageDigest.getInstance("SHA-256").digest(content));
+        assertEquals(new File(directory, digest + ".pdf").getAbsolutePath(), path);
+        assertEquals(content.length, new File(path).length());
+    }
+
+    @Test
+    public void sameContentIsStoredOnce() throws Exception {
+        String first = importPdf(pdf("same"));
+        String second = importPdf(pdf("same"));
+        String other = importPdf(pdf("other"));
+
+        assertEquals(first, second);
+        assertNotEquals(first, other);
+        // No temporary copies are left behind
+        assertEquals(2, directory.listFiles().length);
+    }
+
+    @Test
+    public void emptyInputIsNotStored() throws Exception {
+        assertNull(importPdf(new byte[0]));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void pendingImportsAreNotDeleted() throws Exception {
+        String path = importPdf(pdf("pending"));
+
+        assertFalse(store.deleteUnreferenced(path));
+        assertTrue(new File(path).exists());
+
+        store.release(path);
+        assertTrue(store.deleteUnreferenced(path));
+        assertFalse(new File(path).exists());
+    }
+
+    @Test
+    public void claimsOnTheSamePdfAreCounted() throws Exception {
+        // Picked on two screens, or twice on one
+        String first = importPdf(pdf("twice"));
+        String second = importPdf(pdf("twice"));
+        assertEquals(first, second);
+
+        store.release(first);
+        assertFalse(store.deleteUnreferenced(first));
+        assertTrue(new File(first).exists());
+
+        store.retain(first);
+        store.release(second);
+        assertFalse(store.deleteUnreferenced(first));
+        store.release(first);
+        assertTrue(store.deleteUnreferenced(first));
+    }
+
+    @Test
+    public void booksSharingAPdfAreCounted() {
+        // Only the rows are counted, so no file needs to be stored
+        String database = "pdf_store_test.db";
+        String path = new File(directory, "shared.pdf").getAbsolutePath();
+        context.deleteDatabase(database);
+        DatabaseHelper dbHelper = new DatabaseHelper(context, database);
+        try {
+            int first = (int) dbHelper.addBook("First", "Author", "Description", null, path);
+            dbHelper.addBook("Second", "Author", "Description", null, path);
+
+            assertEquals(2, dbHelper.countBooksWithPdf(path));
+            dbHelper.deleteBook(first);
+            assertEquals(1, dbHelper.countBooksWithPdf(path));
+        } finally {
+            dbHelper.close();
+            context.deleteDatabase(database);
+        }
+    }
+
+    // Picks `content` the way the add and edit screens do and waits for the stored path
+    private String importPdf(byte[] content) throws IOException, InterruptedException {
+        try (OutputStream out = new FileOutputStream(source)) {
+            out.write(content);
+        }
+        AtomicReference<String> path = new AtomicReference<>();
+        CountDownLatch imported = new CountDownLatch(1);
+        store.importPdf(Uri.fromFile(source), null, result -> {
+            path.set(result);
+            imported.countDown();
+        });
+        assertTrue(imported.await(10, TimeUnit.SECONDS));
+        return path.get();
+    }
+
+    private static byte[] pdf(String body) {
+        return ("%PDF-1.4\n" + body + "\n%%EOF\n").getBytes(StandardCharsets.US_ASCII);
+    }
+}
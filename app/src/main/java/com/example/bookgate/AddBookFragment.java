@@ -2,7 +2,6 @@ package com.example.bookgate;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
@@ -23,11 +22,11 @@ import androidx.fragment.app.Fragment;
 import com.google.android.material.textfield.TextInputEditText;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.UUID;
 
 public class AddBookFragment extends Fragment {
 
@@ -41,8 +40,16 @@ public class AddBookFragment extends Fragment {
     private Button chooseImageGalleryBtn, takePhotoBtn, choosePdfBtn, addBookBtn;
 
     private String imagePath = "";
+    // Where the camera writes its full-size shot, before it is imported
+    private String capturePath;
     private String pdfPath = "";
-    private DatabaseHelper dbHelper;
+    private LibraryRepository repository;
+    private PdfStore pdfStore;
+    // The PDF copy in progress, if any
+    private FileImporter.Import pdfImport;
+    // Cover imports still running, and whether a save is queued; Add waits for all of them
+    private int coverImports;
+    private boolean saving;
 
     @Nullable
     @Override
@@ -60,7 +67,8 @@ public class AddBookFragment extends Fragment {
         choosePdfBtn = view.findViewById(R.id.choose_pdf_button);
         addBookBtn = view.findViewById(R.id.add_book_button);
 
-        dbHelper = new DatabaseHelper(requireContext());
+        repository = LibraryRepository.getInstance(requireContext());
+        pdfStore = PdfStore.getInstance(requireContext());
 
         // Set click listeners
         chooseImageGalleryBtn.setOnClickListener(v -> openGallery());
@@ -107,8 +115,8 @@ public class AddBookFragment extends Fragment {
                 storageDir      /* directory */
         );
 
-        // Save a file path for use with ACTION_VIEW intents
-        imagePath = image.getAbsolutePath();
+        // Imported into a smaller copy once the camera returns
+        capturePath = image.getAbsolutePath();
         return image;
     }
 
@@ -141,8 +149,18 @@ public class AddBookFragment extends Fragment {
         }
 
         // Add book to database
-        long bookId = dbHelper.addBook(title, author, description, imagePath, pdfPath);
+        saving = true;
+        updateAddButton();
+        repository.addBook(title, author, description, imagePath, pdfPath, bookId -> {
+            saving = false;
+            updateAddButton();
+            if (isAdded()) {
+                onBookAdded(bookId);
+            }
+        });
+    }
 
+    private void onBookAdded(long bookId) {
         if (bookId != -1) {
             // Clear form
             titleInput.setText("");
@@ -151,6 +169,8 @@ public class AddBookFragment extends Fragment {
             coverPreview.setImageResource(R.drawable.ic_book);
             pdfFileNameText.setText(R.string.no_file_selected);
             imagePath = "";
+            // The new row references the PDF, so the form's claim can go
+            pdfStore.release(pdfPath);
             pdfPath = "";
 
             Toast.makeText(requireContext(), "Book added successfully", Toast.LENGTH_SHORT).show();
@@ -159,87 +179,106 @@ public class AddBookFragment extends Fragment {
         }
     }
 
+    private File newCoverFile() {
+        File storageDir = requireContext().getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+        // The timestamp only has one-second resolution; the suffix keeps a second pick within
+        // the same second from overwriting a cover a book or an import already points at
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        return new File(storageDir, "JPEG_" + timeStamp + "_" + suffix + ".jpg");
+    }
+
+    // Enabled only once no import or save is running, so a late import can't miss the row
+    private void updateAddButton() {
+        addBookBtn.setEnabled(pdfImport == null && coverImports == 0 && !saving);
+    }
+
+    private void onCoverImported(String path) {
+        coverImports--;
+        if (!isAdded()) {
+            return;
+        }
+        updateAddButton();
+        if (path != null) {
+            imagePath = path;
+            CoverLoader.getInstance(requireContext()).load(path, coverPreview, R.drawable.ic_book);
+        } else {
+            Toast.makeText(requireContext(), "Error processing image", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void onPdfProgress(long bytesCopied, long totalBytes) {
+        if (isAdded()) {
+            pdfFileNameText.setText(totalBytes > 0
+                    ? getString(R.string.pdf_import_progress, (int) (bytesCopied * 100 / totalBytes))
+                    : getString(R.string.pdf_import_progress_size, (int) (bytesCopied / (1024 * 1024))));
+        }
+    }
+
+    private void onPdfImported(String path) {
+        pdfImport = null;
+        if (!isAdded()) {
+            // Nothing will save it now
+            pdfStore.release(path);
+            return;
+        }
+        updateAddButton();
+        if (path != null) {
+            // The form keeps one claim. Claims are counted, so this gives back either the earlier
+            // pick, which won't be saved now, or the spare claim when the same PDF was picked again.
+            pdfStore.release(pdfPath);
+            pdfPath = path;
+            pdfFileNameText.setText(new File(path).getName());
+            Toast.makeText(requireContext(), "PDF attached", Toast.LENGTH_SHORT).show();
+        } else {
+            if (pdfPath.isEmpty()) {
+                pdfFileNameText.setText(R.string.no_file_selected);
+            } else {
+                pdfFileNameText.setText(new File(pdfPath).getName());
+            }
+            Toast.makeText(requireContext(), "Error processing PDF", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // Stops the copy and drops its .part file
+        if (pdfImport != null) {
+            pdfImport.cancel();
+        }
+        // Left without saving; a save already queued holds its own claim
+        pdfStore.release(pdfPath);
+        pdfPath = "";
+        CoverLoader.getInstance(requireContext()).release(coverPreview);
+    }
+
     @Override
     public void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
 
         if (resultCode == Activity.RESULT_OK) {
             if (requestCode == REQUEST_IMAGE_GALLERY && data != null) {
-                Uri selectedImage = data.getData();
-                try {
-                    Bitmap bitmap = MediaStore.Images.Media.getBitmap(requireActivity().getContentResolver(), selectedImage);
-                    // Save bitmap to app's private storage
-                    File storageDir = requireContext().getExternalFilesDir(Environment.DIRECTORY_PICTURES);
-                    String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-                    String imageFileName = "JPEG_" + timeStamp + ".jpg";
-                    File imageFile = new File(storageDir, imageFileName);
-                    FileOutputStream out = new FileOutputStream(imageFile);
-                    bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
-                    out.close();
-
-                    imagePath = imageFile.getAbsolutePath();
-                    coverPreview.setImageBitmap(bitmap);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    Toast.makeText(requireContext(), "Error processing image", Toast.LENGTH_SHORT).show();
-                }
-            } else if (requestCode == REQUEST_IMAGE_CAPTURE) {
-                // Image captured and saved to imagePath
-                coverPreview.setImageURI(Uri.fromFile(new File(imagePath)));
+                // Downsample, orient and save the picked image in the background
+                ImageImporter.getInstance(requireContext())
+                        .importImage(data.getData(), newCoverFile(), this::onCoverImported);
+                coverImports++;
+                updateAddButton();
+            } else if (requestCode == REQUEST_IMAGE_CAPTURE && capturePath != null) {
+                // The camera wrote a full-size shot; replace it with an imported copy
+                ImageImporter.getInstance(requireContext())
+                        .importCapture(new File(capturePath), newCoverFile(), this::onCoverImported);
+                capturePath = null;
+                coverImports++;
+                updateAddButton();
             } else if (requestCode == REQUEST_PDF_FILE && data != null) {
-                Uri pdfUri = data.getData();
-                
-                // Copy PDF to app's private storage
-                try {
-                    // Ensure directory exists
-                    File storageDir = requireContext().getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
-                    if (storageDir != null && !storageDir.exists()) {
-                        storageDir.mkdirs();
-                    }
-                    
-                    String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-                    String pdfFileName = "PDF_" + timeStamp + ".pdf";
-                    File pdfFile = new File(storageDir, pdfFileName);
-                    
-                    // Copy the file with improved error handling
-                    FileOutputStream out = new FileOutputStream(pdfFile);
-                    byte[] buffer = new byte[8192]; // Larger buffer for efficiency
-                    int read;
-                    
-                    java.io.InputStream in = requireContext().getContentResolver().openInputStream(pdfUri);
-                    if (in != null) {
-                        while ((read = in.read(buffer)) != -1) {
-                            out.write(buffer, 0, read);
-                        }
-                        in.close();
-                        out.flush();
-                        out.close();
-                        
-                        // Ensure file was created properly
-                        if (pdfFile.exists() && pdfFile.length() > 0) {
-                            pdfPath = pdfFile.getAbsolutePath();
-                            pdfFileNameText.setText(pdfFileName);
-                            
-                            // Show success message with path for debugging
-                            Toast.makeText(requireContext(), 
-                                "PDF saved successfully at: " + pdfPath, 
-                                Toast.LENGTH_LONG).show();
-                        } else {
-                            Toast.makeText(requireContext(), 
-                                "Error: PDF file not created properly", 
-                                Toast.LENGTH_SHORT).show();
-                        }
-                    } else {
-                        Toast.makeText(requireContext(), 
-                            "Could not open input stream for PDF", 
-                            Toast.LENGTH_SHORT).show();
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    Toast.makeText(requireContext(), 
-                        "Error processing PDF: " + e.getMessage(), 
-                        Toast.LENGTH_LONG).show();
+                // Copy the PDF into the shared store in the background, replacing any copy
+                // still running for an earlier pick
+                if (pdfImport != null) {
+                    pdfImport.cancel();
                 }
+                pdfImport = pdfStore.importPdf(data.getData(), this::onPdfProgress, this::onPdfImported);
+                updateAddButton();
             }
         }
     }
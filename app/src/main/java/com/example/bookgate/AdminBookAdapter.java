@@ -1,7 +1,6 @@
 package com.example.bookgate;
 
 import android.content.Context;
-import android.net.Uri;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,31 +9,50 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.io.File;
-import java.util.List;
+public class AdminBookAdapter extends ListAdapter<BookSummary, AdminBookAdapter.ViewHolder> {
 
-public class AdminBookAdapter extends RecyclerView.Adapter<AdminBookAdapter.ViewHolder> {
+    // Rows also show the key counts, so every field counts here
+    static final DiffUtil.ItemCallback<BookSummary> DIFF_CALLBACK = new DiffUtil.ItemCallback<BookSummary>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull BookSummary oldBook, @NonNull BookSummary newBook) {
+            return oldBook.getId() == newBook.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull BookSummary oldBook, @NonNull BookSummary newBook) {
+            return oldBook.equals(newBook);
+        }
+    };
 
     private final Context context;
-    private final List<Book> bookList;
     private final OnBookDeleteListener deleteListener;
     private final OnBookEditListener editListener;
+    private final CoverLoader coverLoader;
+    private BookPager pager;
 
     public interface OnBookDeleteListener {
-        void onBookDelete(int position);
+        void onBookDelete(BookSummary book);
     }
     
     public interface OnBookEditListener {
-        void onBookEdit(int position);
+        void onBookEdit(BookSummary book);
     }
 
-    public AdminBookAdapter(Context context, List<Book> bookList, OnBookDeleteListener deleteListener, OnBookEditListener editListener) {
+    public AdminBookAdapter(Context context, OnBookDeleteListener deleteListener, OnBookEditListener editListener) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.bookList = bookList;
         this.deleteListener = deleteListener;
         this.editListener = editListener;
+        this.coverLoader = CoverLoader.getInstance(context);
+        setHasStableIds(true);
+    }
+
+    public void setPager(BookPager pager) {
+        this.pager = pager;
     }
 
     @NonNull
@@ -46,49 +64,62 @@ public class AdminBookAdapter extends RecyclerView.Adapter<AdminBookAdapter.View
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        Book book = bookList.get(position);
+        if (pager != null) {
+            pager.loadAround(position);
+        }
+
+        BookSummary book = getItem(position);
+        if (book == null) {
+            // Placeholder while the page holding this position is loading
+            holder.titleTextView.setText(null);
+            holder.authorTextView.setText(null);
+            holder.keyCountsTextView.setText(null);
+            coverLoader.load(null, holder.coverImageView, R.drawable.ic_book);
+            holder.deleteButton.setOnClickListener(null);
+            holder.itemView.setOnClickListener(null);
+            return;
+        }
 
-        // Set book data
+        // Set book data; the key counts are columns of the row, not a query per book
         holder.titleTextView.setText(book.getTitle());
         holder.authorTextView.setText(book.getAuthor());
-        holder.descriptionTextView.setText(book.getDescription());
-
-        // Load image if exists
-        String imagePath = book.getImagePath();
-        if (imagePath != null && !imagePath.isEmpty()) {
-            File imageFile = new File(imagePath);
-            if (imageFile.exists()) {
-                holder.coverImageView.setImageURI(Uri.fromFile(imageFile));
-            } else {
-                holder.coverImageView.setImageResource(R.drawable.ic_book);
-            }
-        } else {
-            holder.coverImageView.setImageResource(R.drawable.ic_book);
-        }
+        holder.keyCountsTextView.setText(context.getString(R.string.book_key_counts,
+                book.getKeysOutstanding(), book.getKeysRedeemed()));
+
+        // Load the grid-size cover in the background, its stored color until then
+        coverLoader.load(book.getListCoverPath(), holder.coverImageView, R.drawable.ic_book, book.getCoverColor());
 
         // Set delete button click listener
         holder.deleteButton.setOnClickListener(v -> {
             if (deleteListener != null) {
-                deleteListener.onBookDelete(holder.getAdapterPosition());
+                deleteListener.onBookDelete(book);
             }
         });
         
         // Set item click listener for editing
         holder.itemView.setOnClickListener(v -> {
             if (editListener != null) {
-                editListener.onBookEdit(holder.getAdapterPosition());
+                editListener.onBookEdit(book);
             }
         });
     }
 
     @Override
-    public int getItemCount() {
-        return bookList.size();
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        // The row now shows another book; drop its pending cover and free its bitmap for reuse
+        coverLoader.release(holder.coverImageView);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        BookSummary book = getItem(position);
+        // Book ids are positive, so placeholders get negative ids of their own
+        return book != null ? book.getId() : -1L - position;
     }
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
         ImageView coverImageView;
-        TextView titleTextView, authorTextView, descriptionTextView;
+        TextView titleTextView, authorTextView, keyCountsTextView;
         ImageButton deleteButton;
 
         public ViewHolder(@NonNull View itemView) {
@@ -96,7 +127,7 @@ public class AdminBookAdapter extends RecyclerView.Adapter<AdminBookAdapter.View
             coverImageView = itemView.findViewById(R.id.admin_book_cover);
             titleTextView = itemView.findViewById(R.id.admin_book_title);
             authorTextView = itemView.findViewById(R.id.admin_book_author);
-            descriptionTextView = itemView.findViewById(R.id.admin_book_description);
+            keyCountsTextView = itemView.findViewById(R.id.admin_book_key_counts);
             deleteButton = itemView.findViewById(R.id.admin_delete_book_button);
         }
     }
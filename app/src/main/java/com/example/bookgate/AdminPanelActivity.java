@@ -21,15 +21,18 @@ public class AdminPanelActivity extends AppCompatActivity {
 
     private TabLayout tabLayout;
     private ViewPager2 viewPager;
-    private String userEmail;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_admin_panel);
 
-        // Get user email from intent
-        userEmail = getIntent().getStringExtra("USER_EMAIL");
+        // Only librarians may be here; anyone else goes back to the login screen
+        if (!Session.getInstance(this).isLibrarian()) {
+            startActivity(new Intent(this, LoginActivity.class));
+            finish();
+            return;
+        }
 
         // Initialize UI components
         Toolbar toolbar = findViewById(R.id.toolbar);
@@ -80,6 +83,7 @@ public class AdminPanelActivity extends AppCompatActivity {
             return true;
         } else if (item.getItemId() == R.id.action_logout) {
             // Handle logout
+            Session.getInstance(this).end();
             Toast.makeText(this, "Logged out successfully", Toast.LENGTH_SHORT).show();
             Intent intent = new Intent(this, LoginActivity.class);
             intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
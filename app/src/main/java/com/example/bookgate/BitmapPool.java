@@ -0,0 +1,118 @@
+package com.example.bookgate;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bitmaps that nothing shows or caches any more, kept for
+ * {@code BitmapFactory.Options.inBitmap} so decoding a cover can reuse
+ * memory instead of allocating it. Bitmaps are bucketed by allocation
+ * size; a request takes the smallest one that fits, as long as it is no
+ * more than twice what is needed. The pool is bounded in bytes and drops
+ * its largest bitmaps first. Thread-safe.
+ */
+public class BitmapPool {
+
+    // A bitmap more than this many times the size needed would waste more than reuse saves
+    private static final int MAX_SIZE_RATIO = 2;
+
+    private final long maxBytes;
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+    private long bytes;
+
+    private long hits;
+    private long misses;
+    private long bytesAvoided;
+
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // Returns a mutable bitmap of at least `byteCount` bytes, or null on a miss
+    public synchronized Bitmap get(int byteCount) {
+        Map.Entry<Integer, ArrayDeque<Bitmap>> bucket = buckets.ceilingEntry(byteCount);
+        if (bucket == null || bucket.getKey() > (long) byteCount * MAX_SIZE_RATIO) {
+            misses++;
+            return null;
+        }
+        Bitmap bitmap = bucket.getValue().poll();
+        if (bucket.getValue().isEmpty()) {
+            buckets.remove(bucket.getKey());
+        }
+        bytes -= bucket.getKey();
+        hits++;
+        bytesAvoided += byteCount;
+        return bitmap;
+    }
+
+    // Hands over a bitmap nothing else references; the caller must not use it afterwards
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (size > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        ArrayDeque<Bitmap> bucket = buckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(size, bucket);
+        }
+        bucket.push(bitmap);
+        bytes += size;
+        trimTo(maxBytes);
+    }
+
+    // A decode into a pooled bitmap failed, so that bitmap was not actually reused
+    public synchronized void onReuseFailed(Bitmap bitmap, int byteCount) {
+        hits--;
+        misses++;
+        bytesAvoided -= byteCount;
+        put(bitmap);
+    }
+
+    public synchronized void clear() {
+        trimTo(0);
+    }
+
+    private void trimTo(long limit) {
+        while (bytes > limit && !buckets.isEmpty()) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> largest = buckets.lastEntry();
+            Bitmap bitmap = largest.getValue().pollLast();
+            if (largest.getValue().isEmpty()) {
+                buckets.remove(largest.getKey());
+            }
+            bytes -= largest.getKey();
+            bitmap.recycle();
+        }
+    }
+
+    // Metrics
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized double getHitRate() {
+        long requests = hits + misses;
+        return requests > 0 ? (double) hits / requests : 0;
+    }
+
+    // Bytes that decodes did not have to allocate because a pooled bitmap was reused
+    public synchronized long getBytesAvoided() {
+        return bytesAvoided;
+    }
+
+    public synchronized long getSizeBytes() {
+        return bytes;
+    }
+}
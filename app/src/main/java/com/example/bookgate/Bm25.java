@@ -0,0 +1,55 @@
+package com.example.bookgate;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Okapi BM25 computed from an FTS4 matchinfo() blob, for SQLite builds that
+ * lack FTS5 and its built-in bm25() function. Higher scores are better.
+ */
+final class Bm25 {
+
+    // phrase count, column count, row count, average lengths, row lengths, per-phrase hits
+    static final String MATCHINFO_FORMAT = "pcnalx";
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private Bm25() {
+    }
+
+    static double score(byte[] matchinfo, double[] columnWeights) {
+        IntBuffer info = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phraseCount = info.get(0);
+        int columnCount = info.get(1);
+        long rowCount = info.get(2) & 0xFFFFFFFFL;
+        int averageLengthOffset = 3;
+        int lengthOffset = averageLengthOffset + columnCount;
+        int hitsOffset = lengthOffset + columnCount;
+
+        double score = 0;
+        for (int column = 0; column < columnCount; column++) {
+            double weight = column < columnWeights.length ? columnWeights[column] : 1.0;
+            double averageLength = Math.max(1, info.get(averageLengthOffset + column));
+            double length = info.get(lengthOffset + column);
+
+            for (int phrase = 0; phrase < phraseCount; phrase++) {
+                int hits = hitsOffset + 3 * (column + phrase * columnCount);
+                double termFrequency = info.get(hits);
+                if (termFrequency == 0) {
+                    continue;
+                }
+                double matchingRows = info.get(hits + 2);
+
+                // Clamped the same way as FTS5 so very common terms still count a little
+                double idf = Math.log((rowCount - matchingRows + 0.5) / (matchingRows + 0.5));
+                idf = Math.max(idf, 1e-6);
+
+                score += weight * idf * (termFrequency * (K1 + 1))
+                        / (termFrequency + K1 * (1 - B + B * length / averageLength));
+            }
+        }
+        return score;
+    }
+}
@@ -7,6 +7,11 @@ public class Book {
     private String description;
     private String imagePath;
     private String pdfPath;
+    // Downsampled copies of the cover written at import; null for books that have none yet
+    private String thumbnailPath;
+    private String detailImagePath;
+    // Dominant color of the cover, shown while it loads; 0 if unknown
+    private int coverColor;
 
     public Book(int id, String title, String author, String description, String imagePath, String pdfPath) {
         this.id = id;
@@ -17,6 +22,13 @@ public class Book {
         this.pdfPath = pdfPath;
     }
 
+    public Book(Book other) {
+        this(other.id, other.title, other.author, other.description, other.imagePath, other.pdfPath);
+        this.thumbnailPath = other.thumbnailPath;
+        this.detailImagePath = other.detailImagePath;
+        this.coverColor = other.coverColor;
+    }
+
     public int getId() {
         return id;
     }
@@ -64,4 +76,33 @@ public class Book {
     public void setPdfPath(String pdfPath) {
         this.pdfPath = pdfPath;
     }
+
+    public String getThumbnailPath() {
+        return thumbnailPath;
+    }
+
+    public void setThumbnailPath(String thumbnailPath) {
+        this.thumbnailPath = thumbnailPath;
+    }
+
+    public String getDetailImagePath() {
+        return detailImagePath;
+    }
+
+    public void setDetailImagePath(String detailImagePath) {
+        this.detailImagePath = detailImagePath;
+    }
+
+    public int getCoverColor() {
+        return coverColor;
+    }
+
+    public void setCoverColor(int coverColor) {
+        this.coverColor = coverColor;
+    }
+
+    // The detail-size cover if one was generated, otherwise the original
+    public String getDetailCoverPath() {
+        return detailImagePath != null ? detailImagePath : imagePath;
+    }
 }
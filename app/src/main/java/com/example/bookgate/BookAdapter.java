@@ -2,7 +2,6 @@ package com.example.bookgate;
 
 import android.content.Context;
 import android.content.Intent;
-import android.net.Uri;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,21 +9,50 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.io.File;
-import java.util.List;
+import java.util.Objects;
 
-public class BookAdapter extends RecyclerView.Adapter<BookAdapter.BookViewHolder> {
+/**
+ * Book grid adapter. Each list the pager publishes is diffed against the
+ * shown one on a background thread, and only rows that were inserted,
+ * removed, moved or changed are rebound. Null entries are placeholders for
+ * the page being loaded.
+ */
+public class BookAdapter extends ListAdapter<BookSummary, BookAdapter.BookViewHolder> {
+
+    static final DiffUtil.ItemCallback<BookSummary> DIFF_CALLBACK = new DiffUtil.ItemCallback<BookSummary>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull BookSummary oldBook, @NonNull BookSummary newBook) {
+            return oldBook.getId() == newBook.getId();
+        }
+
+        // Only what a grid cell shows. Key counts change with every redemption, which
+        // shouldn't rebind members' rows; the admin list compares them (see AdminBookAdapter).
+        @Override
+        public boolean areContentsTheSame(@NonNull BookSummary oldBook, @NonNull BookSummary newBook) {
+            return Objects.equals(oldBook.getTitle(), newBook.getTitle())
+                    && Objects.equals(oldBook.getAuthor(), newBook.getAuthor())
+                    && Objects.equals(oldBook.getListCoverPath(), newBook.getListCoverPath())
+                    && oldBook.getCoverColor() == newBook.getCoverColor();
+        }
+    };
 
     private final Context context;
-    private final List<Book> bookList;
-    private final String userEmail;
+    private final CoverLoader coverLoader;
+    private BookPager pager;
 
-    public BookAdapter(Context context, List<Book> bookList, String userEmail) {
+    public BookAdapter(Context context) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.bookList = bookList;
-        this.userEmail = userEmail;
+        this.coverLoader = CoverLoader.getInstance(context);
+        setHasStableIds(true);
+    }
+
+    public void setPager(BookPager pager) {
+        this.pager = pager;
     }
 
     @NonNull
@@ -36,35 +64,45 @@ public class BookAdapter extends RecyclerView.Adapter<BookAdapter.BookViewHolder
 
     @Override
     public void onBindViewHolder(@NonNull BookViewHolder holder, int position) {
-        Book book = bookList.get(position);
+        if (pager != null) {
+            pager.loadAround(position);
+        }
+
+        BookSummary book = getItem(position);
+        if (book == null) {
+            // Placeholder while the page holding this position is loading
+            holder.titleTextView.setText(null);
+            holder.authorTextView.setText(null);
+            coverLoader.load(null, holder.coverImageView, R.drawable.ic_book);
+            holder.itemView.setOnClickListener(null);
+            return;
+        }
+
         holder.titleTextView.setText(book.getTitle());
         holder.authorTextView.setText(book.getAuthor());
 
-        // Load book cover image if exists
-        String imagePath = book.getImagePath();
-        if (imagePath != null && !imagePath.isEmpty()) {
-            File imageFile = new File(imagePath);
-            if (imageFile.exists()) {
-                holder.coverImageView.setImageURI(Uri.fromFile(imageFile));
-            } else {
-                holder.coverImageView.setImageResource(R.drawable.ic_book);
-            }
-        } else {
-            holder.coverImageView.setImageResource(R.drawable.ic_book);
-        }
+        // Load the grid-size cover in the background, its stored color until then
+        coverLoader.load(book.getListCoverPath(), holder.coverImageView, R.drawable.ic_book, book.getCoverColor());
 
         // Set click listener to open book details
         holder.itemView.setOnClickListener(v -> {
             Intent intent = new Intent(context, BookDetailActivity.class);
             intent.putExtra("BOOK_ID", book.getId());
-            intent.putExtra("USER_EMAIL", userEmail);
             context.startActivity(intent);
         });
     }
 
     @Override
-    public int getItemCount() {
-        return bookList.size();
+    public void onViewRecycled(@NonNull BookViewHolder holder) {
+        // The cell now shows another book; drop its pending cover and free its bitmap for reuse
+        coverLoader.release(holder.coverImageView);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        BookSummary book = getItem(position);
+        // Book ids are positive, so placeholders get negative ids of their own
+        return book != null ? book.getId() : -1L - position;
     }
 
     public static class BookViewHolder extends RecyclerView.ViewHolder {
@@ -79,10 +117,4 @@ public class BookAdapter extends RecyclerView.Adapter<BookAdapter.BookViewHolder
             authorTextView = itemView.findViewById(R.id.book_author);
         }
     }
-
-    public void updateData(List<Book> newBooks) {
-        bookList.clear();
-        bookList.addAll(newBooks);
-        notifyDataSetChanged();
-    }
 }
@@ -0,0 +1,60 @@
+package com.example.bookgate;
+
+import android.util.LruCache;
+
+/**
+ * Recently opened books, keyed by id, so reopening a book does not go back
+ * to the database. Entries are copies: callers may edit the Book they get
+ * without changing what is cached. Every write to the books table, including
+ * the key counters that change with download_keys, bumps a version number;
+ * a row read before a write is not cached after it, and list screens can
+ * compare versions to skip reloading an unchanged catalog.
+ */
+public class BookCache {
+
+    private static final int MAX_BOOKS = 64;
+
+    private final LruCache<Integer, Book> books = new LruCache<>(MAX_BOOKS);
+    private volatile long version = 0;
+
+    // Returns a copy of the cached book, or null on a miss
+    public Book get(int bookId) {
+        Book book = books.get(bookId);
+        return book != null ? new Book(book) : null;
+    }
+
+    // Caches a book read from the database, unless the books table changed since `readVersion`
+    public synchronized void putIfUnchanged(Book book, long readVersion) {
+        if (version == readVersion) {
+            books.put(book.getId(), new Book(book));
+        }
+    }
+
+    // Write-through for a row that was just inserted with all of its columns
+    public synchronized void onBookAdded(Book book) {
+        version++;
+        books.put(book.getId(), new Book(book));
+    }
+
+    public synchronized void onBookChanged(int bookId) {
+        version++;
+        books.remove(bookId);
+    }
+
+    // Key writes only change the counters, which Book does not carry
+    public synchronized void onKeysChanged() {
+        version++;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getHitCount() {
+        return books.hitCount();
+    }
+
+    public int getMissCount() {
+        return books.missCount();
+    }
+}
@@ -26,46 +26,43 @@ public class BookDetailActivity extends AppCompatActivity {
     private LinearLayout keyInputLayout;
     private TextInputEditText downloadKeyInput;
     
-    private DatabaseHelper dbHelper;
+    private LibraryRepository repository;
     private Book book;
-    private String userEmail;
-    private boolean isLibrarian;
+    private Session session;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_book_detail);
 
-        // Get book ID and user email from intent
+        // Get book ID from intent; the user comes from the session
         int bookId = getIntent().getIntExtra("BOOK_ID", -1);
-        userEmail = getIntent().getStringExtra("USER_EMAIL");
+        session = Session.getInstance(this);
         
-        if (bookId == -1 || userEmail == null) {
+        if (bookId == -1 || !session.isLoggedIn()) {
             Toast.makeText(this, "Error: Book not found", Toast.LENGTH_SHORT).show();
             finish();
             return;
         }
 
-        // Initialize database helper
-        dbHelper = new DatabaseHelper(this);
-        
-        // Get book details
-        book = dbHelper.getBookById(bookId);
-        if (book == null) {
-            Toast.makeText(this, "Error: Book not found", Toast.LENGTH_SHORT).show();
-            finish();
-            return;
-        }
-        
-        // Check if user is librarian
-        User user = dbHelper.getUserByEmail(userEmail);
-        isLibrarian = user != null && user.isLibrarian();
+        // Initialize repository
+        repository = LibraryRepository.getInstance(this);
 
         // Initialize UI components
         initializeUI();
         
-        // Display book details
-        displayBookDetails();
+        // Get book details
+        repository.getBookById(bookId, loadedBook -> {
+            if (loadedBook == null) {
+                Toast.makeText(this, "Error: Book not found", Toast.LENGTH_SHORT).show();
+                finish();
+                return;
+            }
+            book = loadedBook;
+            
+            // Display book details
+            displayBookDetails();
+        });
     }
 
     private void initializeUI() {
@@ -89,7 +86,11 @@ public class BookDetailActivity extends AppCompatActivity {
         
         // Set download button click listener
         downloadButton.setOnClickListener(v -> {
-            if (isLibrarian) {
+            if (book == null) {
+                // Still loading
+                return;
+            }
+            if (session.isLibrarian()) {
                 // Librarians can download directly
                 downloadPdf();
             } else {
@@ -107,14 +108,17 @@ public class BookDetailActivity extends AppCompatActivity {
                 return;
             }
             
-            // Validate the key
-            if (dbHelper.isValidKey(key, book.getId())) {
-                // Key is valid, download the PDF
-                dbHelper.deleteKey(key); // Remove the key after use
-                downloadPdf();
-            } else {
-                Toast.makeText(this, "Invalid download key", Toast.LENGTH_SHORT).show();
-            }
+            // Validate and consume the key in one step
+            submitKeyButton.setEnabled(false);
+            repository.redeemKey(key, book.getId(), redeemed -> {
+                submitKeyButton.setEnabled(true);
+                if (redeemed) {
+                    // Key was valid and is now used up, download the PDF
+                    downloadPdf();
+                } else {
+                    Toast.makeText(this, "Invalid download key", Toast.LENGTH_SHORT).show();
+                }
+            });
         });
     }
 
@@ -124,18 +128,9 @@ public class BookDetailActivity extends AppCompatActivity {
         authorTextView.setText(book.getAuthor());
         descriptionTextView.setText(book.getDescription());
         
-        // Load book cover image if exists
-        String imagePath = book.getImagePath();
-        if (imagePath != null && !imagePath.isEmpty()) {
-            File imageFile = new File(imagePath);
-            if (imageFile.exists()) {
-                bookCoverView.setImageURI(Uri.fromFile(imageFile));
-            } else {
-                bookCoverView.setImageResource(R.drawable.ic_book);
-            }
-        } else {
-            bookCoverView.setImageResource(R.drawable.ic_book);
-        }
+        // Load the detail-size cover in the background, its stored color until then
+        CoverLoader.getInstance(this).load(book.getDetailCoverPath(), bookCoverView, R.drawable.ic_book,
+                book.getCoverColor());
     }
     
     private void downloadPdf() {
@@ -143,9 +138,6 @@ public class BookDetailActivity extends AppCompatActivity {
         if (pdfPath != null && !pdfPath.isEmpty()) {
             File pdfFile = new File(pdfPath);
             
-            // Debug information
-            Toast.makeText(this, "PDF Path: " + pdfPath, Toast.LENGTH_LONG).show();
-            
             if (pdfFile.exists()) {
                 try {
                     // Use FileProvider to create a content URI
@@ -182,4 +174,12 @@ public class BookDetailActivity extends AppCompatActivity {
         onBackPressed();
         return true;
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (bookCoverView != null) {
+            CoverLoader.getInstance(this).release(bookCoverView);
+        }
+    }
 }
@@ -0,0 +1,37 @@
+package com.example.bookgate;
+
+import android.app.Application;
+import android.os.StrictMode;
+
+public class BookGateApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // In debug builds, log any disk or network access made on the main thread
+        if (BuildConfig.DEBUG) {
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .detectNetwork()
+                    .penaltyLog()
+                    .build());
+            StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                    .detectLeakedSqlLiteObjects()
+                    .detectLeakedClosableObjects()
+                    .penaltyLog()
+                    .build());
+        }
+
+        // Read the saved session once, before any screen asks for it. MainActivity routes
+        // on it as soon as it starts, so this is the one disk read the main thread is
+        // allowed; it is a single small preferences file.
+        StrictMode.ThreadPolicy policy = StrictMode.allowThreadDiskReads();
+        try {
+            Session.getInstance(this);
+        } finally {
+            StrictMode.setThreadPolicy(policy);
+        }
+    }
+}
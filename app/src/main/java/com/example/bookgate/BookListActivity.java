@@ -8,45 +8,38 @@ import android.view.View;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
 import androidx.appcompat.widget.Toolbar;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
-import java.util.List;
-
 public class BookListActivity extends AppCompatActivity {
 
     private RecyclerView booksRecyclerView;
     private BookAdapter bookAdapter;
+    private BookPager bookPager;
     private FloatingActionButton fabAddBook;
-    private DatabaseHelper dbHelper;
-    private String userEmail;
-    private boolean isLibrarian = false;
+    private LibraryRepository repository;
+    private Session session;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_book_list);
 
-        // Get user email from intent
-        userEmail = getIntent().getStringExtra("USER_EMAIL");
-        if (userEmail == null) {
-            // If no user email, redirect to login
+        // Identity and role come from the session, not from the database
+        session = Session.getInstance(this);
+        if (!session.isLoggedIn()) {
+            // If nobody is logged in, redirect to login
             startActivity(new Intent(this, LoginActivity.class));
             finish();
             return;
         }
 
-        // Initialize database helper
-        dbHelper = new DatabaseHelper(this);
-        
-        // Check if user is admin
-        User user = dbHelper.getUserByEmail(userEmail);
-        if (user != null) {
-            isLibrarian = user.isLibrarian();
-        }
+        // Initialize repository
+        repository = LibraryRepository.getInstance(this);
 
         // Set up toolbar
         Toolbar toolbar = findViewById(R.id.toolbar);
@@ -59,49 +52,82 @@ public class BookListActivity extends AppCompatActivity {
         booksRecyclerView = findViewById(R.id.books_recycler_view);
         fabAddBook = findViewById(R.id.fab_add_book);
 
+        // Set up the RecyclerView
+        setupRecyclerView();
+
+        showLibrarianActions();
+    }
+
+    private void showLibrarianActions() {
         // Show add book button only for librarians
-        if (isLibrarian) {
+        if (session.isLibrarian()) {
             fabAddBook.setVisibility(View.VISIBLE);
             fabAddBook.setOnClickListener(v -> {
                 Intent intent = new Intent(BookListActivity.this, AdminPanelActivity.class);
-                intent.putExtra("USER_EMAIL", userEmail);
                 startActivity(intent);
             });
         } else {
             fabAddBook.setVisibility(View.GONE);
         }
-
-        // Set up the RecyclerView
-        setupRecyclerView();
     }
 
     private void setupRecyclerView() {
-        // Get books from database
-        List<Book> books = dbHelper.getAllBooks();
-        
-        // Set up the adapter and layout manager
-        bookAdapter = new BookAdapter(this, books, userEmail);
+        // Set up the adapter and layout manager; pages are loaded in onResume
+        bookAdapter = new BookAdapter(this);
         booksRecyclerView.setLayoutManager(new GridLayoutManager(this, 2));
         booksRecyclerView.setAdapter(bookAdapter);
+        // Decode the covers of the rows coming into view before they are bound
+        booksRecyclerView.addOnScrollListener(new CoverPrefetcher(bookAdapter, CoverLoader.getInstance(this)));
+
+        // Load the catalog page by page as the grid is scrolled
+        bookPager = new BookPager(repository, bookAdapter::submitList);
+        bookAdapter.setPager(bookPager);
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        // Refresh book list when returning to this activity
-        if (bookAdapter != null) {
-            bookAdapter.updateData(dbHelper.getAllBooks());
+        // Refresh book list when returning to this activity, if any book changed meanwhile
+        if (bookPager != null) {
+            bookPager.refreshIfChanged();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (bookPager != null) {
+            bookPager.shutdown();
+            CoverLoader.getInstance(this).cancelPrefetches();
         }
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_book_list, menu);
+
+        // Search the catalog as the user types
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setQueryHint(getString(R.string.search_books_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                bookPager.setQuery(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                bookPager.setQuery(newText);
+                return true;
+            }
+        });
         
         // Show admin panel menu item only for librarians
         MenuItem adminItem = menu.findItem(R.id.action_admin_panel);
         if (adminItem != null) {
-            adminItem.setVisible(isLibrarian);
+            adminItem.setVisible(session.isLibrarian());
         }
         
         return true;
@@ -113,14 +139,14 @@ public class BookListActivity extends AppCompatActivity {
         
         if (id == R.id.action_logout) {
             // Handle logout
+            session.end();
             Intent intent = new Intent(BookListActivity.this, LoginActivity.class);
             intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
             startActivity(intent);
             return true;
-        } else if (id == R.id.action_admin_panel && isLibrarian) {
+        } else if (id == R.id.action_admin_panel && session.isLibrarian()) {
             // Open admin panel
             Intent intent = new Intent(BookListActivity.this, AdminPanelActivity.class);
-            intent.putExtra("USER_EMAIL", userEmail);
             startActivity(intent);
             return true;
         }
@@ -0,0 +1,115 @@
+package com.example.bookgate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the book catalog in fixed-size pages as the list is scrolled.
+ * Pages are keyed on the last loaded (title, id) pair, so a deep page costs
+ * the same as the first one. While the next page is loading the published
+ * list ends with null entries that the adapter renders as placeholders.
+ * While a search query is set the pager publishes the ranked search results
+ * instead of the catalog. {@link #refreshIfChanged()} skips the reload when
+ * no book was added, edited or deleted since the last one.
+ */
+public class BookPager {
+
+    public interface Listener {
+        void onBooksLoaded(List<BookSummary> books);
+    }
+
+    public static final int PAGE_SIZE = 40;
+    // Start loading the next page when this many items are left to show
+    private static final int PREFETCH_DISTANCE = 10;
+    private static final int SEARCH_LIMIT = 100;
+
+    private final LibraryRepository repository;
+    private final Listener listener;
+
+    private final List<BookSummary> loadedBooks = new ArrayList<>();
+    private boolean loading = false;
+    private boolean endReached = false;
+    private String query;
+    // Catalog version the loaded rows were read at, -1 before the first load
+    private long loadedVersion = -1;
+    // The load in flight; a refresh cancels it so its result is dropped
+    private LibraryRepository.Request pendingRequest;
+
+    public BookPager(LibraryRepository repository, Listener listener) {
+        this.repository = repository;
+        this.listener = listener;
+    }
+
+    // Switches between search results and the full catalog (null or blank query)
+    public void setQuery(String query) {
+        String trimmed = query != null ? query.trim() : "";
+        this.query = trimmed.isEmpty() ? null : trimmed;
+        loadedBooks.clear();
+        refresh();
+    }
+
+    public void refreshIfChanged() {
+        if (loadedVersion != repository.getCatalogVersion()) {
+            refresh();
+        }
+    }
+
+    // Reloads from the first page, keeping at least as many rows as are already shown
+    public void refresh() {
+        cancelPendingRequest();
+        loadedVersion = repository.getCatalogVersion();
+        final int limit = Math.max(PAGE_SIZE, loadedBooks.size());
+        final boolean searching = query != null;
+        loading = true;
+
+        LibraryRepository.Callback<List<BookSummary>> onLoaded = page -> {
+            loadedBooks.clear();
+            loadedBooks.addAll(page);
+            endReached = searching || page.size() < limit;
+            loading = false;
+            publish();
+        };
+        pendingRequest = searching
+                ? repository.searchBooks(query, SEARCH_LIMIT, onLoaded)
+                : repository.getBooksPage(null, 0, limit, onLoaded);
+    }
+
+    // Called by the adapter for every bound position
+    public void loadAround(int position) {
+        if (loading || endReached || loadedBooks.isEmpty()
+                || position < loadedBooks.size() - PREFETCH_DISTANCE) {
+            return;
+        }
+
+        BookSummary last = loadedBooks.get(loadedBooks.size() - 1);
+        loading = true;
+        pendingRequest = repository.getBooksPage(last.getTitle(), last.getId(), PAGE_SIZE, page -> {
+            loadedBooks.addAll(page);
+            endReached = page.size() < PAGE_SIZE;
+            loading = false;
+            publish();
+        });
+    }
+
+    public void shutdown() {
+        cancelPendingRequest();
+    }
+
+    private void cancelPendingRequest() {
+        if (pendingRequest != null) {
+            pendingRequest.cancel();
+            pendingRequest = null;
+        }
+    }
+
+    private void publish() {
+        List<BookSummary> books = new ArrayList<>(loadedBooks);
+        if (!endReached) {
+            // Placeholders for the page that will be loaded next
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                books.add(null);
+            }
+        }
+        listener.onBooksLoaded(books);
+    }
+}
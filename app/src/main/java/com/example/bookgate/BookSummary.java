@@ -0,0 +1,90 @@
+package com.example.bookgate;
+
+import java.util.Objects;
+
+// The columns a book list row shows. Lists load these instead of full Book rows
+// so they never read the description or PDF path.
+public class BookSummary {
+    private final int id;
+    private final String title;
+    private final String author;
+    private final String imagePath;
+    private final String thumbnailPath;
+    private final int coverColor;
+    private final int keysOutstanding;
+    private final int keysRedeemed;
+
+    public BookSummary(int id, String title, String author, String imagePath, String thumbnailPath,
+                       int coverColor, int keysOutstanding, int keysRedeemed) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.imagePath = imagePath;
+        this.thumbnailPath = thumbnailPath;
+        this.coverColor = coverColor;
+        this.keysOutstanding = keysOutstanding;
+        this.keysRedeemed = keysRedeemed;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public String getImagePath() {
+        return imagePath;
+    }
+
+    public String getThumbnailPath() {
+        return thumbnailPath;
+    }
+
+    // The grid-size cover if one was generated, otherwise the original
+    public String getListCoverPath() {
+        return thumbnailPath != null ? thumbnailPath : imagePath;
+    }
+
+    // Dominant color of the cover, or 0 if unknown
+    public int getCoverColor() {
+        return coverColor;
+    }
+
+    public int getKeysOutstanding() {
+        return keysOutstanding;
+    }
+
+    public int getKeysRedeemed() {
+        return keysRedeemed;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BookSummary)) {
+            return false;
+        }
+        BookSummary other = (BookSummary) o;
+        return id == other.id
+                && Objects.equals(title, other.title)
+                && Objects.equals(author, other.author)
+                && Objects.equals(imagePath, other.imagePath)
+                && Objects.equals(thumbnailPath, other.thumbnailPath)
+                && coverColor == other.coverColor
+                && keysOutstanding == other.keysOutstanding
+                && keysRedeemed == other.keysRedeemed;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, title, author, imagePath, thumbnailPath, coverColor, keysOutstanding, keysRedeemed);
+    }
+}
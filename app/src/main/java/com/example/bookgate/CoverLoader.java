@@ -0,0 +1,494 @@
+package com.example.bookgate;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.ColorDrawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Loads book covers into ImageViews off the main thread. Decoded bitmaps
+ * are kept in a memory cache bounded by their byte size; covers that had
+ * to be downsampled are also written to a disk cache, so the next run
+ * reads the small copy instead of decoding the original again. Loading a
+ * view again, or calling {@link #cancel} when its ViewHolder is recycled,
+ * drops the earlier request so a fling doesn't decode covers for rows that
+ * are long gone. Decodes reuse bitmaps from a {@link BitmapPool}; a bitmap
+ * goes back to the pool once it has left the memory cache and no view
+ * shows it any more. {@link #prefetch} warms the memory cache for views
+ * about to be bound; a bind that finds its cover still being prefetched
+ * takes over that decode instead of starting another. All public methods
+ * must be called on the main thread.
+ */
+public class CoverLoader {
+
+    private static final int DECODE_THREADS = 2;
+    // An eighth of the heap for decoded covers
+    private static final int MEMORY_CACHE_DIVISOR = 8;
+    // And a sixteenth for bitmaps waiting to be reused
+    private static final int BITMAP_POOL_DIVISOR = 16;
+    private static final long DISK_CACHE_BYTES = 20L * 1024 * 1024;
+    private static final String DISK_CACHE_DIR = "covers";
+    private static final int DISK_CACHE_QUALITY = 85;
+
+    private static CoverLoader instance;
+
+    private final LruCache<String, Bitmap> memoryCache;
+    private final BitmapPool bitmapPool;
+    private final File diskCacheDir;
+    private final int fallbackSize;
+    // Only Tasks are queued; they order themselves so prefetches never delay a bound view
+    private final ThreadPoolExecutor decodeExecutor = new ThreadPoolExecutor(DECODE_THREADS, DECODE_THREADS,
+            0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), runnable ->
+            new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "CoverLoader"));
+    private long nextSequence;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // The pending request of each view; weak, so views that go away aren't kept
+    private final Map<ImageView, Task> tasks = new WeakHashMap<>();
+    // Which bitmap each view shows, how many views show each bitmap, and which bitmaps
+    // the memory cache holds; a bitmap in none of these can be pooled. Weak, so a view
+    // dropped without being released only means its bitmap is not reused.
+    private final Map<ImageView, Bitmap> shown = new WeakHashMap<>();
+    private final Map<Bitmap, Integer> showCounts = new WeakHashMap<>();
+    private final Set<Bitmap> cached = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Prefetches still decoding, and the keys of prefetched covers no bind has used yet
+    private final Map<String, Task> prefetches = new HashMap<>();
+    private final Set<String> prefetched = new HashSet<>();
+    private long prefetchCount;
+    private long prefetchCancelledCount;
+    private long prefetchHitCount;
+    private final Object diskCacheLock = new Object();
+
+    private class Task implements Runnable, Comparable<Task> {
+        final String path;
+        final String key;
+        final int width;
+        final int height;
+        // Null while the task is only a prefetch
+        ImageView view;
+        final boolean prefetch;
+        final long sequence;
+        volatile boolean cancelled;
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        Task(String path, String key, int width, int height, ImageView view) {
+            this.path = path;
+            this.key = key;
+            this.width = width;
+            this.height = height;
+            this.view = view;
+            this.prefetch = view == null;
+            this.sequence = nextSequence++;
+        }
+
+        // True for the one caller that gets to run the task; a queued task that is
+        // claimed from outside does nothing when its turn comes
+        boolean claim() {
+            return started.compareAndSet(false, true);
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (prefetch != other.prefetch) {
+                return prefetch ? 1 : -1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public void run() {
+            if (cancelled || !claim()) {
+                return;
+            }
+            Bitmap bitmap = decode(path, key, width, height);
+            mainHandler.post(() -> {
+                if (view == null) {
+                    onPrefetched(this, bitmap);
+                    return;
+                }
+                if (tasks.get(view) != this) {
+                    if (bitmap != null) {
+                        bitmapPool.put(bitmap);
+                    }
+                    return;
+                }
+                tasks.remove(view);
+                if (bitmap != null) {
+                    // Shown first, so a bitmap the cache turns straight away is not pooled
+                    show(view, bitmap);
+                    cached.add(bitmap);
+                    memoryCache.put(key, bitmap);
+                }
+            });
+        }
+    }
+
+    public static synchronized CoverLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new CoverLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CoverLoader(Context context) {
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / MEMORY_CACHE_DIVISOR);
+        memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                prefetched.remove(key);
+                cached.remove(oldValue);
+                poolIfUnused(oldValue);
+            }
+        };
+        bitmapPool = new BitmapPool(Runtime.getRuntime().maxMemory() / BITMAP_POOL_DIVISOR);
+        diskCacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        fallbackSize = Math.min(metrics.widthPixels, metrics.heightPixels);
+    }
+
+    // Shows the cover at `path` in `view`, sized for the view, with `placeholderRes`
+    // until it is decoded. A null, empty or missing path leaves the placeholder.
+    public void load(String path, ImageView view, int placeholderRes) {
+        load(path, view, placeholderRes, 0);
+    }
+
+    // As above, but while a cover is decoded the view is filled with `placeholderColor`,
+    // the cover's stored dominant color, unless it is 0. Nothing is read to paint it.
+    public void load(String path, ImageView view, int placeholderRes, int placeholderColor) {
+        cancel(view);
+        if (path == null || path.isEmpty()) {
+            showPlaceholder(view, placeholderRes, 0);
+            return;
+        }
+        int width = targetSize(view.getWidth(), view.getLayoutParams() != null ? view.getLayoutParams().width : 0);
+        int height = targetSize(view.getHeight(), view.getLayoutParams() != null ? view.getLayoutParams().height : 0);
+        String key = path + "@" + width + "x" + height;
+
+        Bitmap hit = memoryCache.get(key);
+        if (hit != null) {
+            if (prefetched.remove(key)) {
+                prefetchHitCount++;
+            }
+            show(view, hit);
+            return;
+        }
+        showPlaceholder(view, placeholderRes, placeholderColor);
+        Task prefetch = prefetches.remove(key);
+        if (prefetch != null) {
+            if (!prefetch.claim()) {
+                // Already decoding; show its result when it is done
+                prefetchHitCount++;
+                prefetch.view = view;
+                tasks.put(view, prefetch);
+                return;
+            }
+            // Still queued behind the binds, so it has not helped; decode at bind priority
+            prefetchCancelledCount++;
+        }
+        Task task = new Task(path, key, width, height, view);
+        tasks.put(view, task);
+        decodeExecutor.execute(task);
+    }
+
+    // Drops the view's pending request, if any; call when its ViewHolder is recycled
+    public void cancel(ImageView view) {
+        Task task = tasks.remove(view);
+        if (task != null) {
+            task.cancelled = true;
+        }
+    }
+
+    // Decodes the cover at `path` into the memory cache for a later load() into a
+    // width x height view. Does nothing if it is cached or already on its way.
+    public void prefetch(String path, int width, int height) {
+        if (path == null || path.isEmpty()) {
+            return;
+        }
+        String key = path + "@" + width + "x" + height;
+        if (prefetches.containsKey(key) || memoryCache.get(key) != null) {
+            return;
+        }
+        Task task = new Task(path, key, width, height, null);
+        prefetches.put(key, task);
+        prefetchCount++;
+        decodeExecutor.execute(task);
+    }
+
+    // Drops every prefetch still waiting or decoding; ones a bind has taken over carry on
+    public void cancelPrefetches() {
+        for (Task task : prefetches.values()) {
+            task.cancelled = true;
+            prefetchCancelledCount++;
+        }
+        prefetches.clear();
+    }
+
+    private void onPrefetched(Task task, Bitmap bitmap) {
+        if (prefetches.get(task.key) != task) {
+            // Cancelled while it decoded
+            if (bitmap != null) {
+                bitmapPool.put(bitmap);
+            }
+            return;
+        }
+        prefetches.remove(task.key);
+        if (bitmap != null) {
+            cached.add(bitmap);
+            memoryCache.put(task.key, bitmap);
+            prefetched.add(task.key);
+        }
+    }
+
+    // Cancels the view's pending request and clears it, so its bitmap can be reused;
+    // call when its ViewHolder is recycled or its screen is destroyed
+    public void release(ImageView view) {
+        cancel(view);
+        view.setImageDrawable(null);
+        unshow(view);
+    }
+
+    public BitmapPool getBitmapPool() {
+        return bitmapPool;
+    }
+
+    // Prefetch metrics
+
+    public long getPrefetchCount() {
+        return prefetchCount;
+    }
+
+    public int getPendingPrefetchCount() {
+        return prefetches.size();
+    }
+
+    public long getPrefetchCancelledCount() {
+        return prefetchCancelledCount;
+    }
+
+    // Prefetches a bind then used, from the cache or by taking over the decode
+    public long getPrefetchHitCount() {
+        return prefetchHitCount;
+    }
+
+    // Of the prefetches that were not cancelled, the share a bind used
+    public double getPrefetchHitRate() {
+        long completed = prefetchCount - prefetchCancelledCount;
+        return completed > 0 ? (double) prefetchHitCount / completed : 0;
+    }
+
+    private void show(ImageView view, Bitmap bitmap) {
+        view.setImageBitmap(bitmap);
+        Integer count = showCounts.get(bitmap);
+        showCounts.put(bitmap, count != null ? count + 1 : 1);
+        Bitmap previous = shown.put(view, bitmap);
+        if (previous != null) {
+            onUnshown(previous);
+        }
+    }
+
+    private void showPlaceholder(ImageView view, int placeholderRes, int placeholderColor) {
+        if (placeholderColor != 0) {
+            view.setImageDrawable(new ColorDrawable(placeholderColor));
+        } else {
+            view.setImageResource(placeholderRes);
+        }
+        unshow(view);
+    }
+
+    private void unshow(ImageView view) {
+        Bitmap previous = shown.remove(view);
+        if (previous != null) {
+            onUnshown(previous);
+        }
+    }
+
+    private void onUnshown(Bitmap bitmap) {
+        Integer count = showCounts.get(bitmap);
+        if (count != null && count > 1) {
+            showCounts.put(bitmap, count - 1);
+            return;
+        }
+        showCounts.remove(bitmap);
+        poolIfUnused(bitmap);
+    }
+
+    private void poolIfUnused(Bitmap bitmap) {
+        if (!showCounts.containsKey(bitmap) && !cached.contains(bitmap)) {
+            bitmapPool.put(bitmap);
+        }
+    }
+
+    // Before layout a view has no size; use its fixed layout size, else the screen's short side
+    private int targetSize(int measured, int layoutSize) {
+        if (measured > 0) {
+            return measured;
+        }
+        if (layoutSize > 0) {
+            return layoutSize;
+        }
+        return fallbackSize;
+    }
+
+    private Bitmap decode(String path, String key, int width, int height) {
+        File source = new File(path);
+        if (!source.exists()) {
+            return null;
+        }
+        File diskCached = diskCacheFile(key, source.lastModified());
+        if (diskCached.exists()) {
+            Bitmap bitmap = decodeFile(diskCached.getAbsolutePath(), 0, 0);
+            if (bitmap != null) {
+                diskCached.setLastModified(System.currentTimeMillis());
+                return bitmap;
+            }
+        }
+
+        int[] sampleSize = new int[1];
+        Bitmap bitmap = decodeFile(path, width, height, sampleSize);
+        if (bitmap != null && sampleSize[0] > 1) {
+            // Worth keeping: the next run reads this instead of the full-size file
+            writeToDiskCache(diskCached, bitmap);
+        }
+        return bitmap;
+    }
+
+    private Bitmap decodeFile(String path, int width, int height) {
+        return decodeFile(path, width, height, new int[1]);
+    }
+
+    // Decodes `path` sampled down towards width x height (0 for full size) into a pooled
+    // bitmap when one fits; the sample size used is returned in sampleSizeOut[0]
+    private Bitmap decodeFile(String path, int width, int height, int[] sampleSizeOut) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int sampleSize = width > 0 && height > 0
+                ? CoverThumbnails.sampleSize(options.outWidth, options.outHeight, width, height)
+                : 1;
+        sampleSizeOut[0] = sampleSize;
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        // Mutable, so the bitmap can later be decoded into in turn
+        options.inMutable = true;
+        // Decoders round the sampled size up, so ask for room for that
+        int byteCount = ceilDiv(options.outWidth, sampleSize) * ceilDiv(options.outHeight, sampleSize) * 4;
+        options.inBitmap = bitmapPool.get(byteCount);
+        try {
+            return BitmapFactory.decodeFile(path, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            // The pooled bitmap could not be reused for this image after all
+            bitmapPool.onReuseFailed(options.inBitmap, byteCount);
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(path, options);
+        }
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    // The entry name covers the source's path, modification time and the requested size,
+    // so a replaced cover never hits an old entry
+    private File diskCacheFile(String key, long lastModified) {
+        String name;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest((key + "#" + lastModified).getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : hash) {
+                builder.append(String.format(Locale.US, "%02x", b));
+            }
+            name = builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            name = Integer.toHexString((key + "#" + lastModified).hashCode());
+        }
+        return new File(diskCacheDir, name + ".jpg");
+    }
+
+    private void writeToDiskCache(File file, Bitmap bitmap) {
+        synchronized (diskCacheLock) {
+            if (!diskCacheDir.exists() && !diskCacheDir.mkdirs()) {
+                return;
+            }
+            // Written under another name and renamed, so a reader never sees half a file
+            File temp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, DISK_CACHE_QUALITY, out);
+            } catch (IOException e) {
+                temp.delete();
+                return;
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                return;
+            }
+            trimDiskCache();
+        }
+    }
+
+    // Deletes the least recently used entries until the cache fits its budget
+    private void trimDiskCache() {
+        File[] files = diskCacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= DISK_CACHE_BYTES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= DISK_CACHE_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.bookgate;
+
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.List;
+
+/**
+ * Warms the cover cache for the rows a scrolling book grid is about to
+ * show. The faster the scroll, the more rows ahead are prefetched, between
+ * {@link #MIN_ROWS_AHEAD} and {@link #MAX_ROWS_AHEAD}; when the direction
+ * flips, the prefetches still pending are cancelled. Rows that
+ * RecyclerView's own item prefetch binds early are not special-cased: a
+ * bind that arrives while its cover is being prefetched takes over that
+ * decode. Hit rates are reported by {@link CoverLoader}.
+ */
+public class CoverPrefetcher extends RecyclerView.OnScrollListener {
+
+    static final int MIN_ROWS_AHEAD = 2;
+    static final int MAX_ROWS_AHEAD = 8;
+    // onScrolled comes about once a frame; aim to cover about half a second of scrolling
+    private static final int LOOKAHEAD_FRAMES = 30;
+
+    private final BookAdapter adapter;
+    private final CoverLoader coverLoader;
+
+    // 1 down the list, -1 up, 0 before the first scroll
+    private int direction;
+    // The furthest position prefetched in the current direction, and the list it is in
+    private int prefetchedTo = RecyclerView.NO_POSITION;
+    private List<BookSummary> prefetchedList;
+
+    public CoverPrefetcher(BookAdapter adapter, CoverLoader coverLoader) {
+        this.adapter = adapter;
+        this.coverLoader = coverLoader;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0 || !(recyclerView.getLayoutManager() instanceof GridLayoutManager)) {
+            return;
+        }
+        int newDirection = dy > 0 ? 1 : -1;
+        List<BookSummary> books = adapter.getCurrentList();
+        if (newDirection != direction || books != prefetchedList) {
+            // The rows ahead are now behind, or the list was replaced
+            coverLoader.cancelPrefetches();
+            direction = newDirection;
+            prefetchedTo = RecyclerView.NO_POSITION;
+            prefetchedList = books;
+        }
+
+        GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        View cell = layoutManager.getChildAt(0);
+        View cover = cell != null ? cell.findViewById(R.id.book_cover) : null;
+        if (first == RecyclerView.NO_POSITION || cover == null || cover.getWidth() == 0) {
+            return;
+        }
+
+        int rows = rowsAhead(Math.abs(dy), layoutManager.getDecoratedMeasuredHeight(cell));
+        int span = layoutManager.getSpanCount();
+        if (direction > 0) {
+            int from = prefetchedTo != RecyclerView.NO_POSITION ? Math.max(last + 1, prefetchedTo + 1) : last + 1;
+            int to = Math.min(books.size() - 1, last + rows * span);
+            for (int position = from; position <= to; position++) {
+                if (!prefetch(books.get(position), cover)) {
+                    // A page still loading; try again from here on the next scroll
+                    break;
+                }
+                prefetchedTo = position;
+            }
+        } else {
+            int from = prefetchedTo != RecyclerView.NO_POSITION ? Math.min(first - 1, prefetchedTo - 1) : first - 1;
+            int to = Math.max(0, first - rows * span);
+            for (int position = from; position >= to; position--) {
+                if (!prefetch(books.get(position), cover)) {
+                    break;
+                }
+                prefetchedTo = position;
+            }
+        }
+    }
+
+    // Covers are prefetched at the size of the shown ones, so the bind finds them under the same key
+    private boolean prefetch(BookSummary book, View cover) {
+        if (book == null) {
+            return false;
+        }
+        coverLoader.prefetch(book.getListCoverPath(), cover.getWidth(), cover.getHeight());
+        return true;
+    }
+
+    static int rowsAhead(int pixelsPerFrame, int rowHeight) {
+        if (rowHeight <= 0) {
+            return MIN_ROWS_AHEAD;
+        }
+        int rows = (int) Math.ceil((double) pixelsPerFrame * LOOKAHEAD_FRAMES / rowHeight);
+        return Math.max(MIN_ROWS_AHEAD, Math.min(MAX_ROWS_AHEAD, rows));
+    }
+}
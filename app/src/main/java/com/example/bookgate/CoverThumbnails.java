@@ -0,0 +1,180 @@
+package com.example.bookgate;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes the downsampled copies of a cover that screens actually show: one
+ * sized for a book grid tile and one for the detail header, next to the
+ * original as {@code <name>_grid.jpg} and {@code <name>_detail.jpg}. Each
+ * fills its view once center-cropped, on the device's short screen side.
+ * The cover's dominant color comes along, so lists can paint a placeholder
+ * before any image is read. Decoding is slow, so call this off the main thread.
+ */
+public final class CoverThumbnails {
+
+    private static final String TAG = "CoverThumbnails";
+
+    // View sizes from item_book.xml and activity_book_detail.xml
+    private static final int GRID_COLUMNS = 2;
+    private static final int GRID_HEIGHT_DP = 160;
+    private static final int DETAIL_HEIGHT_DP = 250;
+    private static final int JPEG_QUALITY = 85;
+    // The dominant color is picked from a copy this many pixels square
+    private static final int COLOR_SAMPLE_SIZE = 16;
+
+    public static class Paths {
+        public final String thumbnailPath;
+        public final String detailImagePath;
+        // Always opaque, so never 0
+        public final int placeholderColor;
+
+        Paths(String thumbnailPath, String detailImagePath, int placeholderColor) {
+            this.thumbnailPath = thumbnailPath;
+            this.detailImagePath = detailImagePath;
+            this.placeholderColor = placeholderColor;
+        }
+    }
+
+    private CoverThumbnails() {
+    }
+
+    // Returns the paths of both sizes, or null if the original can't be read or decoded
+    public static Paths generate(Context context, String imagePath) {
+        if (imagePath == null || imagePath.isEmpty() || !new File(imagePath).exists()) {
+            return null;
+        }
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        int screenWidth = Math.min(metrics.widthPixels, metrics.heightPixels);
+
+        try {
+            String detailPath = write(imagePath, "_detail.jpg",
+                    screenWidth, Math.round(DETAIL_HEIGHT_DP * metrics.density), null);
+            int[] placeholderColor = new int[1];
+            String thumbnailPath = write(imagePath, "_grid.jpg",
+                    screenWidth / GRID_COLUMNS, Math.round(GRID_HEIGHT_DP * metrics.density), placeholderColor);
+            if (detailPath == null || thumbnailPath == null) {
+                delete(detailPath);
+                delete(thumbnailPath);
+                return null;
+            }
+            return new Paths(thumbnailPath, detailPath, placeholderColor[0]);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write cover thumbnails for " + imagePath, e);
+            return null;
+        }
+    }
+
+    private static void delete(String path) {
+        if (path != null && !path.isEmpty()) {
+            new File(path).delete();
+        }
+    }
+
+    // Writes a copy covering width x height; the dominant color of that copy goes in
+    // placeholderColorOut[0] when it is given
+    private static String write(String imagePath, String suffix, int width, int height,
+                                int[] placeholderColorOut) throws IOException {
+        // Read the dimensions only, then decode at the largest power-of-two reduction that
+        // still covers the target, so a 12 MP photo is never fully loaded
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(imagePath, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        float scale = Math.min(1f, Math.max((float) width / options.outWidth, (float) height / options.outHeight));
+        int targetWidth = Math.max(1, Math.round(options.outWidth * scale));
+        int targetHeight = Math.max(1, Math.round(options.outHeight * scale));
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+        Bitmap decoded = BitmapFactory.decodeFile(imagePath, options);
+        if (decoded == null) {
+            return null;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(decoded, targetWidth, targetHeight, true);
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+        if (placeholderColorOut != null) {
+            placeholderColorOut[0] = dominantColor(scaled);
+        }
+
+        File output = new File(baseName(imagePath) + suffix);
+        try (FileOutputStream out = new FileOutputStream(output)) {
+            scaled.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } finally {
+            scaled.recycle();
+        }
+        return output.getAbsolutePath();
+    }
+
+    static int sampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static int dominantColor(Bitmap bitmap) {
+        Bitmap sample = Bitmap.createScaledBitmap(bitmap, COLOR_SAMPLE_SIZE, COLOR_SAMPLE_SIZE, true);
+        int[] pixels = new int[COLOR_SAMPLE_SIZE * COLOR_SAMPLE_SIZE];
+        sample.getPixels(pixels, 0, COLOR_SAMPLE_SIZE, 0, 0, COLOR_SAMPLE_SIZE, COLOR_SAMPLE_SIZE);
+        if (sample != bitmap) {
+            sample.recycle();
+        }
+        return dominantColor(pixels);
+    }
+
+    // The average of the most common color once each channel is cut to 4 bits, so one
+    // strong color wins over the muddy mean of the whole cover. Mostly transparent
+    // pixels are ignored unless there are no others. Always opaque.
+    static int dominantColor(int[] pixels) {
+        int color = dominantColor(pixels, 0x80);
+        return color != 0 ? color : dominantColor(pixels, 0);
+    }
+
+    private static int dominantColor(int[] pixels, int minAlpha) {
+        int[] counts = new int[4096];
+        long[] sums = new long[4096 * 3];
+        int best = -1;
+        for (int pixel : pixels) {
+            if (pixel >>> 24 < minAlpha) {
+                continue;
+            }
+            int r = (pixel >> 16) & 0xff;
+            int g = (pixel >> 8) & 0xff;
+            int b = pixel & 0xff;
+            int bucket = (r >> 4) << 8 | (g >> 4) << 4 | b >> 4;
+            counts[bucket]++;
+            sums[bucket * 3] += r;
+            sums[bucket * 3 + 1] += g;
+            sums[bucket * 3 + 2] += b;
+            if (best == -1 || counts[bucket] > counts[best]) {
+                best = bucket;
+            }
+        }
+        if (best == -1) {
+            return 0;
+        }
+        int count = counts[best];
+        return 0xff000000
+                | (int) (sums[best * 3] / count) << 16
+                | (int) (sums[best * 3 + 1] / count) << 8
+                | (int) (sums[best * 3 + 2] / count);
+    }
+
+    private static String baseName(String path) {
+        int dot = path.lastIndexOf('.');
+        return dot > path.lastIndexOf(File.separatorChar) ? path.substring(0, dot) : path;
+    }
+}
@@ -2,16 +2,28 @@ package com.example.bookgate;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "bookgate.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 6;
 
     // User table
     public static final String TABLE_USERS = "users";
@@ -29,12 +41,24 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_BOOK_DESCRIPTION = "description";
     public static final String COLUMN_BOOK_IMAGE_PATH = "image_path";
     public static final String COLUMN_BOOK_PDF_PATH = "pdf_path";
+    // Downsampled covers generated at import, see CoverThumbnails
+    public static final String COLUMN_BOOK_THUMBNAIL_PATH = "thumbnail_path";
+    public static final String COLUMN_BOOK_DETAIL_IMAGE_PATH = "detail_image_path";
+    public static final String COLUMN_BOOK_COVER_COLOR = "cover_color";
+    // Key counters, kept up to date by triggers on download_keys
+    public static final String COLUMN_BOOK_KEYS_OUTSTANDING = "keys_outstanding";
+    public static final String COLUMN_BOOK_KEYS_REDEEMED = "keys_redeemed";
 
     // Download Keys table
     public static final String TABLE_DOWNLOAD_KEYS = "download_keys";
     public static final String COLUMN_KEY_ID = "id";
     public static final String COLUMN_KEY_BOOK_ID = "book_id";
     public static final String COLUMN_KEY_VALUE = "key_value";
+    // 1 once the key has been used; redeemed keys are kept so they are never issued again
+    public static final String COLUMN_KEY_REDEEMED = "redeemed";
+
+    // Full-text search index mirroring the books table
+    public static final String TABLE_BOOKS_FTS = "books_fts";
 
     // Admin Key for registering new admins
     public static final String ADMIN_KEY = "ADMIN2024";
@@ -48,6 +72,18 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String ROLE_MEMBER = "Member";
     public static final String ROLE_LIBRARIAN = "Librarian";
 
+    // Columns loaded for book list rows
+    private static final String[] BOOK_SUMMARY_COLUMNS = {
+            COLUMN_BOOK_ID, COLUMN_BOOK_TITLE, COLUMN_BOOK_AUTHOR, COLUMN_BOOK_IMAGE_PATH,
+            COLUMN_BOOK_THUMBNAIL_PATH, COLUMN_BOOK_COVER_COLOR, COLUMN_BOOK_KEYS_OUTSTANDING,
+            COLUMN_BOOK_KEYS_REDEEMED};
+
+    // Catalog order used by the paged book list
+    private static final String BOOKS_ORDER_BY = COLUMN_BOOK_TITLE + " COLLATE NOCASE, " + COLUMN_BOOK_ID;
+
+    // Search ranking weights for title, author and description matches
+    private static final double[] SEARCH_COLUMN_WEIGHTS = {10.0, 5.0, 1.0};
+
     // Create table queries
     private static final String CREATE_USERS_TABLE = "CREATE TABLE " + TABLE_USERS + "("
             + COLUMN_USER_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
@@ -70,8 +106,126 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             + COLUMN_KEY_VALUE + " TEXT UNIQUE, "
             + "FOREIGN KEY(" + COLUMN_KEY_BOOK_ID + ") REFERENCES " + TABLE_BOOKS + "(" + COLUMN_BOOK_ID + "))";
 
-    public DatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    // Fixed lookup SQL, built once. The single-value ones run as cached SQLiteStatements
+    // (see statement()). getUserByEmail and getBookById return whole rows, which a
+    // SQLiteStatement can't, so they stay on rawQuery with the same text each time.
+    private static final String IS_USER_ADMIN_SQL = "SELECT COUNT(*) FROM " + TABLE_USERS
+            + " WHERE " + COLUMN_USER_EMAIL + " = ? AND " + COLUMN_USER_ROLE + " = '" + ROLE_LIBRARIAN + "'";
+    private static final String IS_VALID_KEY_SQL = "SELECT COUNT(*) FROM " + TABLE_DOWNLOAD_KEYS
+            + " WHERE " + COLUMN_KEY_VALUE + " = ? AND " + COLUMN_KEY_BOOK_ID + " = ? AND " + COLUMN_KEY_REDEEMED + " = 0";
+    private static final String COUNT_BOOKS_WITH_PDF_SQL = "SELECT COUNT(*) FROM " + TABLE_BOOKS
+            + " WHERE " + COLUMN_BOOK_PDF_PATH + " = ?";
+    private static final String USER_BY_EMAIL_SQL = "SELECT " + COLUMN_USER_ID + ", " + COLUMN_USER_NAME + ", "
+            + COLUMN_USER_EMAIL + ", " + COLUMN_USER_PASSWORD + ", " + COLUMN_USER_ROLE
+            + " FROM " + TABLE_USERS + " WHERE " + COLUMN_USER_EMAIL + " = ?";
+    private static final String BOOK_BY_ID_SQL = "SELECT " + COLUMN_BOOK_ID + ", " + COLUMN_BOOK_TITLE + ", "
+            + COLUMN_BOOK_AUTHOR + ", " + COLUMN_BOOK_DESCRIPTION + ", " + COLUMN_BOOK_IMAGE_PATH + ", "
+            + COLUMN_BOOK_PDF_PATH + ", " + COLUMN_BOOK_THUMBNAIL_PATH + ", " + COLUMN_BOOK_DETAIL_IMAGE_PATH + ", "
+            + COLUMN_BOOK_COVER_COLOR + " FROM " + TABLE_BOOKS + " WHERE " + COLUMN_BOOK_ID + " = ?";
+
+    // Schema migrations. MIGRATIONS[i] upgrades version i + 1 to i + 2, so the last
+    // entry must bring the schema to DATABASE_VERSION. Never edit a shipped step;
+    // add a new one instead.
+    private interface Migration {
+        void migrate(SQLiteDatabase db);
+    }
+
+    private static final Migration[] MIGRATIONS = {
+            DatabaseHelper::createSearchIndex,   // 1 -> 2
+            DatabaseHelper::createListIndexes,   // 2 -> 3
+            DatabaseHelper::addKeyCounters,      // 3 -> 4
+            DatabaseHelper::addCoverThumbnails,  // 4 -> 5
+            DatabaseHelper::addCoverColor        // 5 -> 6
+    };
+
+    // Colliding keys one generateDownloadKeys call redraws before it fails
+    private static final int MAX_KEY_COLLISIONS = 100;
+
+    // Connection tuning: 8 MB page cache and up to 64 MB of the file memory-mapped
+    private static final int CACHE_SIZE_KIB = 8 * 1024;
+    private static final long MMAP_SIZE_BYTES = 64L * 1024 * 1024;
+
+    // Password hashing is tuned so one hash takes about this long on the device
+    private static final long PASSWORD_HASH_TARGET_MILLIS = 100;
+    private static final String SECURITY_PREFS = "security";
+    private static final String KEY_PBKDF2_ITERATIONS = "pbkdf2_iterations";
+
+    // Key filter sizing: room for twice the live keys at the last rebuild, at about 1% false positives
+    private static final double KEY_FILTER_FALSE_POSITIVE_RATE = 0.01;
+    private static final int KEY_FILTER_MIN_CAPACITY = 1024;
+    private static final int KEY_FILTER_SCAN_PAGE = 10000;
+
+    private static DatabaseHelper instance;
+
+    // Recently read books; every write to the books table goes through it
+    private final BookCache bookCache = new BookCache();
+
+    // Compiled statements for the single-value lookups, keyed by SQL; closed with the database
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
+
+    // Whether books_fts was created with FTS5 (bm25 in SQL) or FTS4 (ranked in Java)
+    private volatile Boolean searchUsesFts5;
+
+    // One helper per process, so the connection and its schema stay loaded
+    public static synchronized DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHelper(context.getApplicationContext(), DATABASE_NAME);
+        }
+        return instance;
+    }
+
+    private final Context context;
+    private final Object passwordHasherLock = new Object();
+    private volatile PasswordHasher passwordHasher;
+
+    // Bloom filter over unredeemed key values, null until first built. While a rebuild
+    // scans the table, new keys go into the filter being built as well.
+    private final Object keyFilterLock = new Object();
+    private volatile KeyFilter keyFilter;
+    private volatile KeyFilter pendingKeyFilter;
+
+    DatabaseHelper(Context context, String databaseName) {
+        super(context, databaseName, null, DATABASE_VERSION);
+        this.context = context;
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // With WAL, NORMAL only syncs at checkpoints and is still safe against app crashes
+        db.execSQL("PRAGMA synchronous = NORMAL");
+        db.execSQL("PRAGMA cache_size = -" + CACHE_SIZE_KIB);
+        // mmap_size reports the new value back, so it has to run as a query
+        Cursor cursor = db.rawQuery("PRAGMA mmap_size = " + MMAP_SIZE_BYTES, null);
+        cursor.moveToFirst();
+        cursor.close();
+    }
+
+    @Override
+    public synchronized void close() {
+        synchronized (statements) {
+            for (SQLiteStatement statement : statements.values()) {
+                statement.close();
+            }
+            statements.clear();
+        }
+        super.close();
+    }
+
+    // Returns the compiled statement for `sql`, compiling it on first use. A statement
+    // holds its bindings, so callers must bind and run it while synchronized on it.
+    private SQLiteStatement statement(String sql) {
+        // Opened outside the lock: close() holds the helper's lock while it takes this one
+        SQLiteDatabase db = getReadableDatabase();
+        synchronized (statements) {
+            SQLiteStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = db.compileStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
     }
 
     @Override
@@ -82,17 +236,150 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         
         // Add default admin account
         addDefaultAdmin(db);
+
+        // Bring the version 1 tables up to date the same way an upgrade would
+        migrate(db, 1, DATABASE_VERSION);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_DOWNLOAD_KEYS);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_BOOKS);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_USERS);
-        onCreate(db);
+        migrate(db, oldVersion, newVersion);
+    }
+
+    // Runs each step in order; SQLiteOpenHelper wraps the whole upgrade in one transaction
+    private static void migrate(SQLiteDatabase db, int fromVersion, int toVersion) {
+        if (toVersion != MIGRATIONS.length + 1) {
+            throw new IllegalStateException("No migration path to database version " + toVersion);
+        }
+        for (int version = fromVersion; version < toVersion; version++) {
+            MIGRATIONS[version - 1].migrate(db);
+        }
+    }
+
+    // Version 3: indexes for the paged book list and per-book key lookups
+    private static void createListIndexes(SQLiteDatabase db) {
+        // Matches BOOKS_ORDER_BY; the rowid id is implicitly the last index column
+        db.execSQL("CREATE INDEX idx_books_title ON " + TABLE_BOOKS
+                + "(" + COLUMN_BOOK_TITLE + " COLLATE NOCASE)");
+        // Covers key lookups by book, and serves book_id alone as its leftmost column
+        db.execSQL("CREATE INDEX idx_download_keys_book_key ON " + TABLE_DOWNLOAD_KEYS
+                + "(" + COLUMN_KEY_BOOK_ID + ", " + COLUMN_KEY_VALUE + ")");
+    }
+
+    // Version 4: keys are marked redeemed instead of deleted, and each book counts its
+    // outstanding and redeemed keys so list rows can show them without a query each
+    private static void addKeyCounters(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_DOWNLOAD_KEYS + " ADD COLUMN "
+                + COLUMN_KEY_REDEEMED + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("ALTER TABLE " + TABLE_BOOKS + " ADD COLUMN "
+                + COLUMN_BOOK_KEYS_OUTSTANDING + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("ALTER TABLE " + TABLE_BOOKS + " ADD COLUMN "
+                + COLUMN_BOOK_KEYS_REDEEMED + " INTEGER NOT NULL DEFAULT 0");
+
+        // Keys redeemed before this version were deleted, so only outstanding ones can be counted
+        db.execSQL("UPDATE " + TABLE_BOOKS + " SET " + COLUMN_BOOK_KEYS_OUTSTANDING + " = (SELECT COUNT(*) FROM "
+                + TABLE_DOWNLOAD_KEYS + " WHERE " + COLUMN_KEY_BOOK_ID + " = " + TABLE_BOOKS + "." + COLUMN_BOOK_ID + ")");
+
+        // Per-book key pages only list outstanding keys, so seek on (book_id, redeemed, key_value).
+        // Lookups by key_value alone (redeemKey, deleteKey, isValidKey) don't need the dropped
+        // index: key_value has been UNIQUE since version 1, and its automatic index serves them.
+        db.execSQL("DROP INDEX idx_download_keys_book_key");
+        db.execSQL("CREATE INDEX idx_download_keys_book_redeemed_key ON " + TABLE_DOWNLOAD_KEYS
+                + "(" + COLUMN_KEY_BOOK_ID + ", " + COLUMN_KEY_REDEEMED + ", " + COLUMN_KEY_VALUE + ")");
+
+        String addNew = countKeys("new", "+");
+        String removeOld = countKeys("old", "-");
+        db.execSQL("CREATE TRIGGER download_keys_count_ai AFTER INSERT ON " + TABLE_DOWNLOAD_KEYS
+                + " BEGIN " + addNew + "END");
+        db.execSQL("CREATE TRIGGER download_keys_count_ad AFTER DELETE ON " + TABLE_DOWNLOAD_KEYS
+                + " BEGIN " + removeOld + "END");
+        db.execSQL("CREATE TRIGGER download_keys_count_au AFTER UPDATE OF " + COLUMN_KEY_BOOK_ID + ", "
+                + COLUMN_KEY_REDEEMED + " ON " + TABLE_DOWNLOAD_KEYS + " BEGIN " + removeOld + addNew + "END");
+    }
+
+    // Version 5: paths of the downsampled covers. Books from before this version get
+    // theirs from LibraryRepository's backfill; until then lists show the original.
+    private static void addCoverThumbnails(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_BOOKS + " ADD COLUMN " + COLUMN_BOOK_THUMBNAIL_PATH + " TEXT");
+        db.execSQL("ALTER TABLE " + TABLE_BOOKS + " ADD COLUMN " + COLUMN_BOOK_DETAIL_IMAGE_PATH + " TEXT");
+    }
+
+    // Version 6: the cover's dominant color, painted while the cover loads. Books from
+    // before this version get theirs from the same backfill as the thumbnails.
+    private static void addCoverColor(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_BOOKS + " ADD COLUMN " + COLUMN_BOOK_COVER_COLOR + " INTEGER");
+    }
+
+    // Trigger statement adding (+) or removing (-) one key row's contribution to its book's counters
+    private static String countKeys(String row, String sign) {
+        return "UPDATE " + TABLE_BOOKS + " SET "
+                + COLUMN_BOOK_KEYS_OUTSTANDING + " = " + COLUMN_BOOK_KEYS_OUTSTANDING + " " + sign
+                + " (1 - " + row + "." + COLUMN_KEY_REDEEMED + "), "
+                + COLUMN_BOOK_KEYS_REDEEMED + " = " + COLUMN_BOOK_KEYS_REDEEMED + " " + sign + " "
+                + row + "." + COLUMN_KEY_REDEEMED
+                + " WHERE " + COLUMN_BOOK_ID + " = " + row + "." + COLUMN_KEY_BOOK_ID + "; ";
+    }
+
+    // Version 2: full-text search index over existing books
+    private static void createSearchIndex(SQLiteDatabase db) {
+        try {
+            db.execSQL("CREATE VIRTUAL TABLE " + TABLE_BOOKS_FTS + " USING fts5("
+                    + COLUMN_BOOK_TITLE + ", " + COLUMN_BOOK_AUTHOR + ", " + COLUMN_BOOK_DESCRIPTION + ", "
+                    + "content='" + TABLE_BOOKS + "', content_rowid='" + COLUMN_BOOK_ID + "', prefix='2 3')");
+            createFts5Triggers(db);
+        } catch (SQLiteException e) {
+            // Most platform SQLite builds ship without FTS5
+            db.execSQL("CREATE VIRTUAL TABLE " + TABLE_BOOKS_FTS + " USING fts4("
+                    + "content='" + TABLE_BOOKS + "', "
+                    + COLUMN_BOOK_TITLE + ", " + COLUMN_BOOK_AUTHOR + ", " + COLUMN_BOOK_DESCRIPTION + ", "
+                    + "prefix='2,3')");
+            createFts4Triggers(db);
+        }
+
+        // Index the books that are already there
+        db.execSQL("INSERT INTO " + TABLE_BOOKS_FTS + "(" + TABLE_BOOKS_FTS + ") VALUES('rebuild')");
+    }
+
+    private static void createFts5Triggers(SQLiteDatabase db) {
+        String columns = "rowid, " + COLUMN_BOOK_TITLE + ", " + COLUMN_BOOK_AUTHOR + ", " + COLUMN_BOOK_DESCRIPTION;
+        String newValues = "new." + COLUMN_BOOK_ID + ", new." + COLUMN_BOOK_TITLE + ", new."
+                + COLUMN_BOOK_AUTHOR + ", new." + COLUMN_BOOK_DESCRIPTION;
+        String oldValues = "old." + COLUMN_BOOK_ID + ", old." + COLUMN_BOOK_TITLE + ", old."
+                + COLUMN_BOOK_AUTHOR + ", old." + COLUMN_BOOK_DESCRIPTION;
+        String insertNew = "INSERT INTO " + TABLE_BOOKS_FTS + "(" + columns + ") VALUES (" + newValues + "); ";
+        String deleteOld = "INSERT INTO " + TABLE_BOOKS_FTS + "(" + TABLE_BOOKS_FTS + ", " + columns
+                + ") VALUES ('delete', " + oldValues + "); ";
+
+        db.execSQL("CREATE TRIGGER books_fts_ai AFTER INSERT ON " + TABLE_BOOKS
+                + " BEGIN " + insertNew + "END");
+        db.execSQL("CREATE TRIGGER books_fts_ad AFTER DELETE ON " + TABLE_BOOKS
+                + " BEGIN " + deleteOld + "END");
+        db.execSQL("CREATE TRIGGER books_fts_au AFTER UPDATE OF " + COLUMN_BOOK_TITLE + ", "
+                + COLUMN_BOOK_AUTHOR + ", " + COLUMN_BOOK_DESCRIPTION + " ON " + TABLE_BOOKS
+                + " BEGIN " + deleteOld + insertNew + "END");
+    }
+
+    private static void createFts4Triggers(SQLiteDatabase db) {
+        String insertNew = "INSERT INTO " + TABLE_BOOKS_FTS + "(docid, " + COLUMN_BOOK_TITLE + ", "
+                + COLUMN_BOOK_AUTHOR + ", " + COLUMN_BOOK_DESCRIPTION + ") VALUES (new." + COLUMN_BOOK_ID
+                + ", new." + COLUMN_BOOK_TITLE + ", new." + COLUMN_BOOK_AUTHOR + ", new."
+                + COLUMN_BOOK_DESCRIPTION + "); ";
+        // FTS4 reads the old tokens from the content table, so deletes must run before the row changes
+        String deleteOld = "DELETE FROM " + TABLE_BOOKS_FTS + " WHERE docid = old." + COLUMN_BOOK_ID + "; ";
+        String indexedColumns = COLUMN_BOOK_TITLE + ", " + COLUMN_BOOK_AUTHOR + ", " + COLUMN_BOOK_DESCRIPTION;
+
+        db.execSQL("CREATE TRIGGER books_fts_ai AFTER INSERT ON " + TABLE_BOOKS
+                + " BEGIN " + insertNew + "END");
+        db.execSQL("CREATE TRIGGER books_fts_bd BEFORE DELETE ON " + TABLE_BOOKS
+                + " BEGIN " + deleteOld + "END");
+        db.execSQL("CREATE TRIGGER books_fts_bu BEFORE UPDATE OF " + indexedColumns + " ON " + TABLE_BOOKS
+                + " BEGIN " + deleteOld + "END");
+        db.execSQL("CREATE TRIGGER books_fts_au AFTER UPDATE OF " + indexedColumns + " ON " + TABLE_BOOKS
+                + " BEGIN " + insertNew + "END");
     }
     
-    private void addDefaultAdmin(SQLiteDatabase db) {
+    // Stored in plaintext like pre-hashing rows; it is hashed on the first login
+    private static void addDefaultAdmin(SQLiteDatabase db) {
         ContentValues values = new ContentValues();
         values.put(COLUMN_USER_NAME, DEFAULT_ADMIN_NAME);
         values.put(COLUMN_USER_EMAIL, DEFAULT_ADMIN_EMAIL);
@@ -108,137 +395,405 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         ContentValues values = new ContentValues();
         values.put(COLUMN_USER_NAME, name);
         values.put(COLUMN_USER_EMAIL, email);
-        values.put(COLUMN_USER_PASSWORD, password);
+        values.put(COLUMN_USER_PASSWORD, getPasswordHasher().hash(password));
         values.put(COLUMN_USER_ROLE, role);
         
         long id = db.insert(TABLE_USERS, null, values);
-        db.close();
         return id;
     }
     
     public User getUserByEmail(String email) {
         SQLiteDatabase db = this.getReadableDatabase();
         
-        Cursor cursor = db.query(TABLE_USERS, 
-                new String[]{COLUMN_USER_ID, COLUMN_USER_NAME, COLUMN_USER_EMAIL, COLUMN_USER_PASSWORD, COLUMN_USER_ROLE},
-                COLUMN_USER_EMAIL + "=?",
-                new String[]{email}, null, null, null);
+        // Columns are read by their position in USER_BY_EMAIL_SQL
+        Cursor cursor = db.rawQuery(USER_BY_EMAIL_SQL, new String[]{email});
         
         User user = null;
-        if (cursor != null && cursor.moveToFirst()) {
+        if (cursor.moveToFirst()) {
             user = new User(
-                    cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_USER_ID)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_USER_NAME)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_USER_EMAIL)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_USER_PASSWORD)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_USER_ROLE))
+                    cursor.getInt(0),
+                    cursor.getString(1),
+                    cursor.getString(2),
+                    cursor.getString(3),
+                    cursor.getString(4)
             );
-            cursor.close();
         }
+        cursor.close();
         
         return user;
     }
     
-    public boolean checkUser(String email, String password) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_USERS,
-                new String[]{COLUMN_USER_ID},
-                COLUMN_USER_EMAIL + "=? AND " + COLUMN_USER_PASSWORD + "=?",
-                new String[]{email, password},
-                null, null, null);
-        
-        int count = cursor.getCount();
-        cursor.close();
-        return count > 0;
+    // Returns the user if the credentials match, otherwise null. Slow by design, so never
+    // call it on the main thread. Rows still holding a plaintext password, or hashed with
+    // fewer iterations than this device now uses, are rehashed once the password checks out.
+    public User authenticate(String email, String password) {
+        User user = getUserByEmail(email);
+        if (user == null || !PasswordHasher.verify(password, user.getPassword())) {
+            return null;
+        }
+        PasswordHasher hasher = getPasswordHasher();
+        if (hasher.needsRehash(user.getPassword())) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_USER_PASSWORD, hasher.hash(password));
+            // Only replace the value that was verified, in case it changed meanwhile
+            getWritableDatabase().update(TABLE_USERS, values,
+                    COLUMN_USER_ID + " = ? AND " + COLUMN_USER_PASSWORD + " = ?",
+                    new String[]{String.valueOf(user.getId()), user.getPassword()});
+        }
+        return user;
+    }
+    
+    // The iteration count is calibrated on first use and kept in preferences, so later
+    // runs start hashing straight away. The first call takes up to a second.
+    public PasswordHasher getPasswordHasher() {
+        PasswordHasher hasher = passwordHasher;
+        if (hasher == null) {
+            // Not `this`: SQLiteOpenHelper locks it to open the database
+            synchronized (passwordHasherLock) {
+                hasher = passwordHasher;
+                if (hasher == null) {
+                    SharedPreferences prefs = context.getSharedPreferences(SECURITY_PREFS, Context.MODE_PRIVATE);
+                    int iterations = prefs.getInt(KEY_PBKDF2_ITERATIONS, 0);
+                    if (iterations == 0) {
+                        iterations = PasswordHasher.calibrate(PASSWORD_HASH_TARGET_MILLIS);
+                        prefs.edit().putInt(KEY_PBKDF2_ITERATIONS, iterations).apply();
+                    }
+                    hasher = new PasswordHasher(iterations);
+                    passwordHasher = hasher;
+                }
+            }
+        }
+        return hasher;
     }
     
     public boolean isUserAdmin(String email) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_USERS,
-                new String[]{COLUMN_USER_ROLE},
-                COLUMN_USER_EMAIL + "=? AND " + COLUMN_USER_ROLE + "=?",
-                new String[]{email, ROLE_LIBRARIAN},
-                null, null, null);
-        
-        int count = cursor.getCount();
-        cursor.close();
-        return count > 0;
+        SQLiteStatement statement = statement(IS_USER_ADMIN_SQL);
+        synchronized (statement) {
+            statement.bindString(1, email);
+            return statement.simpleQueryForLong() > 0;
+        }
     }
     
     // Book management methods
     public long addBook(String title, String author, String description, String imagePath, String pdfPath) {
+        return addBook(title, author, description, imagePath, null, null, 0, pdfPath);
+    }
+    
+    // A coverColor of 0 stores none
+    public long addBook(String title, String author, String description, String imagePath,
+                        String thumbnailPath, String detailImagePath, int coverColor, String pdfPath) {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put(COLUMN_BOOK_TITLE, title);
         values.put(COLUMN_BOOK_AUTHOR, author);
         values.put(COLUMN_BOOK_DESCRIPTION, description);
         values.put(COLUMN_BOOK_IMAGE_PATH, imagePath);
+        values.put(COLUMN_BOOK_THUMBNAIL_PATH, thumbnailPath);
+        values.put(COLUMN_BOOK_DETAIL_IMAGE_PATH, detailImagePath);
+        putCoverColor(values, coverColor);
         values.put(COLUMN_BOOK_PDF_PATH, pdfPath);
         
         long id = db.insert(TABLE_BOOKS, null, values);
-        db.close();
+        if (id != -1) {
+            Book book = new Book((int) id, title, author, description, imagePath, pdfPath);
+            book.setThumbnailPath(thumbnailPath);
+            book.setDetailImagePath(detailImagePath);
+            book.setCoverColor(coverColor);
+            bookCache.onBookAdded(book);
+        }
         return id;
     }
     
-    public List<Book> getAllBooks() {
-        List<Book> booksList = new ArrayList<>();
-        
-        String selectQuery = "SELECT * FROM " + TABLE_BOOKS;
+    // All books as list rows, in catalog order. Used where every title is needed at once.
+    public List<BookSummary> getAllBookSummaries() {
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
-        
-        if (cursor.moveToFirst()) {
-            do {
-                Book book = new Book(
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_BOOK_ID)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BOOK_TITLE)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BOOK_AUTHOR)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BOOK_DESCRIPTION)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BOOK_IMAGE_PATH)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BOOK_PDF_PATH))
-                );
-                booksList.add(book);
-            } while (cursor.moveToNext());
+        Cursor cursor = db.query(TABLE_BOOKS, BOOK_SUMMARY_COLUMNS,
+                null, null, null, null, BOOKS_ORDER_BY);
+        return readBookSummaries(cursor);
+    }
+    
+    // Returns up to `limit` books ordered by (title, id), starting after the given
+    // position. Pass a null afterTitle for the first page. Seeking on the sort key
+    // instead of using OFFSET keeps every page as cheap as the first one.
+    public List<BookSummary> getBooksPage(String afterTitle, int afterId, int limit) {
+        String selection = null;
+        String[] selectionArgs = null;
+        if (afterTitle != null) {
+            selection = COLUMN_BOOK_TITLE + " COLLATE NOCASE >= ? AND ("
+                    + COLUMN_BOOK_TITLE + " COLLATE NOCASE > ? OR " + COLUMN_BOOK_ID + " > ?)";
+            selectionArgs = new String[]{afterTitle, afterTitle, String.valueOf(afterId)};
+        }
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_BOOKS, BOOK_SUMMARY_COLUMNS,
+                selection, selectionArgs, null, null,
+                BOOKS_ORDER_BY, String.valueOf(limit));
+        return readBookSummaries(cursor);
+    }
+
+    // Reads and closes a cursor over BOOK_SUMMARY_COLUMNS, resolving the column indices once
+    private static List<BookSummary> readBookSummaries(Cursor cursor) {
+        List<BookSummary> booksList = new ArrayList<>(cursor.getCount());
+        int idIndex = cursor.getColumnIndexOrThrow(COLUMN_BOOK_ID);
+        int titleIndex = cursor.getColumnIndexOrThrow(COLUMN_BOOK_TITLE);
+        int authorIndex = cursor.getColumnIndexOrThrow(COLUMN_BOOK_AUTHOR);
+        int imagePathIndex = cursor.getColumnIndexOrThrow(COLUMN_BOOK_IMAGE_PATH);
+        int thumbnailPathIndex = cursor.getColumnIndexOrThrow(COLUMN_BOOK_THUMBNAIL_PATH);
+        int coverColorIndex = cursor.getColumnIndexOrThrow(COLUMN_BOOK_COVER_COLOR);
+        int outstandingIndex = cursor.getColumnIndexOrThrow(COLUMN_BOOK_KEYS_OUTSTANDING);
+        int redeemedIndex = cursor.getColumnIndexOrThrow(COLUMN_BOOK_KEYS_REDEEMED);
+
+        while (cursor.moveToNext()) {
+            booksList.add(new BookSummary(
+                    cursor.getInt(idIndex),
+                    cursor.getString(titleIndex),
+                    cursor.getString(authorIndex),
+                    cursor.getString(imagePathIndex),
+                    cursor.getString(thumbnailPathIndex),
+                    cursor.getInt(coverColorIndex),
+                    cursor.getInt(outstandingIndex),
+                    cursor.getInt(redeemedIndex)
+            ));
+        }
+
+        cursor.close();
+        return booksList;
+    }
+    
+    // Full-text search over title, author and description, best matches first.
+    // Every word of the query is matched as a prefix.
+    public List<BookSummary> searchBooks(String query, int limit) {
+        String matchQuery = buildMatchQuery(query);
+        if (matchQuery == null) {
+            return new ArrayList<>();
+        }
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        if (isSearchFts5(db)) {
+            return searchBooksFts5(db, matchQuery, limit);
+        }
+        return searchBooksFts4(db, matchQuery, limit);
+    }
+
+    private List<BookSummary> searchBooksFts5(SQLiteDatabase db, String matchQuery, int limit) {
+        String selectQuery = "SELECT b." + TextUtils.join(", b.", BOOK_SUMMARY_COLUMNS)
+                + " FROM " + TABLE_BOOKS_FTS + " f JOIN " + TABLE_BOOKS + " b ON b." + COLUMN_BOOK_ID + " = f.rowid"
+                + " WHERE " + TABLE_BOOKS_FTS + " MATCH ?"
+                + " ORDER BY bm25(" + TABLE_BOOKS_FTS + ", " + SEARCH_COLUMN_WEIGHTS[0] + ", "
+                + SEARCH_COLUMN_WEIGHTS[1] + ", " + SEARCH_COLUMN_WEIGHTS[2] + ")"
+                + " LIMIT " + limit;
+        return readBookSummaries(db.rawQuery(selectQuery, new String[]{matchQuery}));
+    }
+
+    private List<BookSummary> searchBooksFts4(SQLiteDatabase db, String matchQuery, int limit) {
+        // FTS4 has no bm25(), so score the matches from matchinfo() and keep the best `limit`
+        PriorityQueue<double[]> best = new PriorityQueue<>(limit + 1, (a, b) -> Double.compare(a[1], b[1]));
+        Cursor cursor = db.rawQuery("SELECT docid, matchinfo(" + TABLE_BOOKS_FTS + ", '" + Bm25.MATCHINFO_FORMAT
+                + "') FROM " + TABLE_BOOKS_FTS + " WHERE " + TABLE_BOOKS_FTS + " MATCH ?", new String[]{matchQuery});
+        while (cursor.moveToNext()) {
+            double score = Bm25.score(cursor.getBlob(1), SEARCH_COLUMN_WEIGHTS);
+            best.add(new double[]{cursor.getLong(0), score});
+            if (best.size() > limit) {
+                best.poll();
+            }
         }
-        
         cursor.close();
+
+        if (best.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<double[]> ranked = new ArrayList<>(best);
+        Collections.sort(ranked, (a, b) -> Double.compare(b[1], a[1]));
+
+        StringBuilder placeholders = new StringBuilder();
+        String[] ids = new String[ranked.size()];
+        for (int i = 0; i < ranked.size(); i++) {
+            placeholders.append(i == 0 ? "?" : ",?");
+            ids[i] = String.valueOf((long) ranked.get(i)[0]);
+        }
+
+        Map<Integer, BookSummary> booksById = new HashMap<>();
+        cursor = db.query(TABLE_BOOKS, BOOK_SUMMARY_COLUMNS,
+                COLUMN_BOOK_ID + " IN (" + placeholders + ")", ids, null, null, null);
+        for (BookSummary book : readBookSummaries(cursor)) {
+            booksById.put(book.getId(), book);
+        }
+
+        List<BookSummary> booksList = new ArrayList<>();
+        for (double[] match : ranked) {
+            BookSummary book = booksById.get((int) match[0]);
+            if (book != null) {
+                booksList.add(book);
+            }
+        }
         return booksList;
     }
+
+    private boolean isSearchFts5(SQLiteDatabase db) {
+        if (searchUsesFts5 == null) {
+            Cursor cursor = db.rawQuery("SELECT sql FROM sqlite_master WHERE name = ?",
+                    new String[]{TABLE_BOOKS_FTS});
+            String sql = cursor.moveToFirst() ? cursor.getString(0) : null;
+            cursor.close();
+            searchUsesFts5 = sql != null && sql.toLowerCase(Locale.ROOT).contains("fts5");
+        }
+        return searchUsesFts5;
+    }
+
+    // Turns free text into a MATCH expression of lower-case prefix terms, or null if
+    // there is nothing to search for. Lower case keeps AND/OR/NOT from acting as operators.
+    static String buildMatchQuery(String query) {
+        if (query == null) {
+            return null;
+        }
+
+        StringBuilder match = new StringBuilder();
+        StringBuilder term = new StringBuilder();
+        String text = query.toLowerCase(Locale.ROOT);
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                term.append(c);
+            } else if (term.length() > 0) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append(term).append('*');
+                term.setLength(0);
+            }
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
     
     public Book getBookById(int id) {
+        Book cached = bookCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        long readVersion = bookCache.getVersion();
         SQLiteDatabase db = this.getReadableDatabase();
         
-        Cursor cursor = db.query(TABLE_BOOKS,
-                new String[]{COLUMN_BOOK_ID, COLUMN_BOOK_TITLE, COLUMN_BOOK_AUTHOR, 
-                        COLUMN_BOOK_DESCRIPTION, COLUMN_BOOK_IMAGE_PATH, COLUMN_BOOK_PDF_PATH},
-                COLUMN_BOOK_ID + "=?",
-                new String[]{String.valueOf(id)}, null, null, null);
+        // Columns are read by their position in BOOK_BY_ID_SQL
+        Cursor cursor = db.rawQuery(BOOK_BY_ID_SQL, new String[]{String.valueOf(id)});
         
         Book book = null;
-        if (cursor != null && cursor.moveToFirst()) {
+        if (cursor.moveToFirst()) {
             book = new Book(
-                    cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_BOOK_ID)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BOOK_TITLE)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BOOK_AUTHOR)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BOOK_DESCRIPTION)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BOOK_IMAGE_PATH)),
-                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BOOK_PDF_PATH))
+                    cursor.getInt(0),
+                    cursor.getString(1),
+                    cursor.getString(2),
+                    cursor.getString(3),
+                    cursor.getString(4),
+                    cursor.getString(5)
             );
-            cursor.close();
+            book.setThumbnailPath(cursor.getString(6));
+            book.setDetailImagePath(cursor.getString(7));
+            book.setCoverColor(cursor.getInt(8));
+            bookCache.putIfUnchanged(book, readVersion);
         }
+        cursor.close();
         
         return book;
     }
+
+    // Ids of books with a cover but no downsampled copies or cover color, e.g. from
+    // before version 5 or 6
+    public List<Integer> getBookIdsWithoutThumbnails() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_BOOKS, new String[]{COLUMN_BOOK_ID},
+                COLUMN_BOOK_IMAGE_PATH + " IS NOT NULL AND " + COLUMN_BOOK_IMAGE_PATH + " != '' AND ("
+                        + COLUMN_BOOK_THUMBNAIL_PATH + " IS NULL OR " + COLUMN_BOOK_COVER_COLOR + " IS NULL)",
+                null, null, null, COLUMN_BOOK_ID);
+        List<Integer> ids = new ArrayList<>(cursor.getCount());
+        while (cursor.moveToNext()) {
+            ids.add(cursor.getInt(0));
+        }
+        cursor.close();
+        return ids;
+    }
+    
+    // Stores the downsampled covers and color made from `imagePath`, unless the book's
+    // cover has been replaced since; returns whether the row was updated
+    public boolean setCoverThumbnails(int bookId, String imagePath, String thumbnailPath, String detailImagePath,
+                                      int coverColor) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_BOOK_THUMBNAIL_PATH, thumbnailPath);
+        values.put(COLUMN_BOOK_DETAIL_IMAGE_PATH, detailImagePath);
+        putCoverColor(values, coverColor);
+        int result = db.update(TABLE_BOOKS, values,
+                COLUMN_BOOK_ID + " = ? AND " + COLUMN_BOOK_IMAGE_PATH + " = ?",
+                new String[]{String.valueOf(bookId), imagePath});
+        bookCache.onBookChanged(bookId);
+        return result > 0;
+    }
+
+    // 0 is stored as NULL, which cursors read back as 0
+    private static void putCoverColor(ContentValues values, int coverColor) {
+        if (coverColor != 0) {
+            values.put(COLUMN_BOOK_COVER_COLOR, coverColor);
+        } else {
+            values.putNull(COLUMN_BOOK_COVER_COLOR);
+        }
+    }
+
+    // How many books point at this PDF; stored PDFs are shared, so a file may only be
+    // deleted once this is 0
+    public long countBooksWithPdf(String pdfPath) {
+        SQLiteStatement statement = statement(COUNT_BOOKS_WITH_PDF_SQL);
+        synchronized (statement) {
+            statement.bindString(1, pdfPath);
+            return statement.simpleQueryForLong();
+        }
+    }
+
+    // Every cover, downsampled cover and PDF path a book points at
+    public Set<String> getMediaPaths() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_BOOKS, new String[]{COLUMN_BOOK_IMAGE_PATH, COLUMN_BOOK_THUMBNAIL_PATH,
+                COLUMN_BOOK_DETAIL_IMAGE_PATH, COLUMN_BOOK_PDF_PATH}, null, null, null, null, null);
+        Set<String> paths = new HashSet<>(cursor.getCount() * 4);
+        while (cursor.moveToNext()) {
+            for (int column = 0; column < 4; column++) {
+                String path = cursor.getString(column);
+                if (path != null && !path.isEmpty()) {
+                    paths.add(path);
+                }
+            }
+        }
+        cursor.close();
+        return paths;
+    }
+
+    public BookCache getBookCache() {
+        return bookCache;
+    }
     
     public boolean deleteBook(int bookId) {
         SQLiteDatabase db = this.getWritableDatabase();
+        int result;
+        int liveKeysDeleted;
         
-        // First delete associated download keys
-        db.delete(TABLE_DOWNLOAD_KEYS, COLUMN_KEY_BOOK_ID + "=?", new String[]{String.valueOf(bookId)});
-        
-        // Then delete the book
-        int result = db.delete(TABLE_BOOKS, COLUMN_BOOK_ID + "=?", new String[]{String.valueOf(bookId)});
-        db.close();
+        // Delete the keys and the book in one transaction, so it is a single commit
+        db.beginTransaction();
+        try {
+            // Redeemed keys already left the filter, so only unredeemed ones count as removals
+            liveKeysDeleted = (int) DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + TABLE_DOWNLOAD_KEYS
+                    + " WHERE " + COLUMN_KEY_BOOK_ID + " = ? AND " + COLUMN_KEY_REDEEMED + " = 0",
+                    new String[]{String.valueOf(bookId)});
+
+            // First delete associated download keys
+            db.delete(TABLE_DOWNLOAD_KEYS, COLUMN_KEY_BOOK_ID + "=?", new String[]{String.valueOf(bookId)});
+            
+            // Then delete the book
+            result = db.delete(TABLE_BOOKS, COLUMN_BOOK_ID + "=?", new String[]{String.valueOf(bookId)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            bookCache.onBookChanged(bookId);
+        }
+        onKeysRemovedFromFilter(liveKeysDeleted);
         
         return result > 0;
     }
@@ -251,7 +806,11 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         values.put(COLUMN_BOOK_AUTHOR, book.getAuthor());
         values.put(COLUMN_BOOK_DESCRIPTION, book.getDescription());
         if (book.getImagePath() != null) {
+            // The downsampled covers belong to this image, so they are replaced together
             values.put(COLUMN_BOOK_IMAGE_PATH, book.getImagePath());
+            values.put(COLUMN_BOOK_THUMBNAIL_PATH, book.getThumbnailPath());
+            values.put(COLUMN_BOOK_DETAIL_IMAGE_PATH, book.getDetailImagePath());
+            putCoverColor(values, book.getCoverColor());
         }
         if (book.getPdfPath() != null) {
             values.put(COLUMN_BOOK_PDF_PATH, book.getPdfPath());
@@ -260,7 +819,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         // Update the book
         int result = db.update(TABLE_BOOKS, values, COLUMN_BOOK_ID + "=?", 
                 new String[]{String.valueOf(book.getId())});
-        db.close();
+        // Null paths leave the stored ones in place, so drop the entry rather than caching `book`
+        bookCache.onBookChanged(book.getId());
         
         return result > 0;
     }
@@ -273,51 +833,241 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         values.put(COLUMN_KEY_VALUE, keyValue);
         
         long id = db.insert(TABLE_DOWNLOAD_KEYS, null, values);
-        db.close();
+        if (id != -1) {
+            addToKeyFilter(keyValue);
+        }
+        bookCache.onKeysChanged();
         return id;
     }
     
-    public List<DownloadKey> getAllKeys() {
+    // Creates exactly `count` new random keys for a book in one transaction and returns
+    // them. A key that collides with an existing one is skipped and another is drawn; over
+    // 50 bits that is rare enough that MAX_KEY_COLLISIONS of them means something is wrong,
+    // and the whole batch is rolled back rather than returned short.
+    public List<String> generateDownloadKeys(int bookId, int count) {
+        List<String> keys = new ArrayList<>(count);
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_DOWNLOAD_KEYS
+                + "(" + COLUMN_KEY_BOOK_ID + ", " + COLUMN_KEY_VALUE + ") VALUES (?, ?)");
+
+        db.beginTransaction();
+        try {
+            insert.bindLong(1, bookId);
+            int collisions = 0;
+            while (keys.size() < count) {
+                String key = DownloadKeyGenerator.newKey();
+                insert.bindString(2, key);
+                // -1 means the UNIQUE constraint ignored the row
+                if (insert.executeInsert() != -1) {
+                    keys.add(key);
+                } else if (++collisions > MAX_KEY_COLLISIONS) {
+                    throw new IllegalStateException("Gave up generating download keys after "
+                            + collisions + " collisions");
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+            bookCache.onKeysChanged();
+        }
+        // Only after the commit: the new keys are not handed out before this returns
+        for (String key : keys) {
+            addToKeyFilter(key);
+        }
+
+        return keys;
+    }
+    
+    // Returns up to `limit` keys of one book in key order, starting after `afterKey`
+    // (null for the first page) and limited to keys starting with `prefix` (may be
+    // empty). Redeemed keys are left out. The book id and key range are both served
+    // by idx_download_keys_book_redeemed_key.
+    public List<DownloadKey> getKeysPage(int bookId, String prefix, String afterKey, int limit) {
         List<DownloadKey> keysList = new ArrayList<>();
+        List<String> args = new ArrayList<>();
         
-        String selectQuery = "SELECT * FROM " + TABLE_DOWNLOAD_KEYS + " k JOIN " + TABLE_BOOKS + 
-                " b ON k." + COLUMN_KEY_BOOK_ID + " = b." + COLUMN_BOOK_ID;
+        String selectQuery = "SELECT k." + COLUMN_KEY_ID + ", k." + COLUMN_KEY_BOOK_ID + ", k." + COLUMN_KEY_VALUE
+                + ", b." + COLUMN_BOOK_TITLE + " FROM " + TABLE_DOWNLOAD_KEYS + " k JOIN " + TABLE_BOOKS +
+                " b ON k." + COLUMN_KEY_BOOK_ID + " = b." + COLUMN_BOOK_ID
+                + " WHERE k." + COLUMN_KEY_BOOK_ID + " = ? AND k." + COLUMN_KEY_REDEEMED + " = 0";
+        args.add(String.valueOf(bookId));
+        if (afterKey != null) {
+            selectQuery += " AND k." + COLUMN_KEY_VALUE + " > ?";
+            args.add(afterKey);
+        } else if (!prefix.isEmpty()) {
+            selectQuery += " AND k." + COLUMN_KEY_VALUE + " >= ?";
+            args.add(prefix);
+        }
+        String prefixEnd = prefixUpperBound(prefix);
+        if (prefixEnd != null) {
+            selectQuery += " AND k." + COLUMN_KEY_VALUE + " < ?";
+            args.add(prefixEnd);
+        }
+        selectQuery += " ORDER BY k." + COLUMN_KEY_VALUE + " LIMIT " + limit;
         
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
+        Cursor cursor = db.rawQuery(selectQuery, args.toArray(new String[0]));
         
-        if (cursor.moveToFirst()) {
-            do {
-                DownloadKey key = new DownloadKey(
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_KEY_ID)),
-                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_KEY_BOOK_ID)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_KEY_VALUE)),
-                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_BOOK_TITLE))
-                );
-                keysList.add(key);
-            } while (cursor.moveToNext());
+        int idIndex = cursor.getColumnIndexOrThrow(COLUMN_KEY_ID);
+        int bookIdIndex = cursor.getColumnIndexOrThrow(COLUMN_KEY_BOOK_ID);
+        int valueIndex = cursor.getColumnIndexOrThrow(COLUMN_KEY_VALUE);
+        int titleIndex = cursor.getColumnIndexOrThrow(COLUMN_BOOK_TITLE);
+        
+        while (cursor.moveToNext()) {
+            DownloadKey key = new DownloadKey(
+                    cursor.getInt(idIndex),
+                    cursor.getInt(bookIdIndex),
+                    cursor.getString(valueIndex),
+                    cursor.getString(titleIndex)
+            );
+            keysList.add(key);
         }
         
         cursor.close();
         return keysList;
     }
     
+    // The smallest string greater than every string starting with `prefix`, or null if
+    // there is none, so a prefix match becomes an indexable range
+    static String prefixUpperBound(String prefix) {
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return null;
+        }
+        return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+    }
+    
     public boolean isValidKey(String keyValue, int bookId) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_DOWNLOAD_KEYS,
-                new String[]{COLUMN_KEY_ID},
-                COLUMN_KEY_VALUE + "=? AND " + COLUMN_KEY_BOOK_ID + "=?",
-                new String[]{keyValue, String.valueOf(bookId)},
-                null, null, null);
-        
-        boolean isValid = cursor.getCount() > 0;
-        cursor.close();
-        return isValid;
+        KeyFilter filter = keyFilter;
+        if (filter != null && !filter.mightContain(keyValue)) {
+            return false;
+        }
+        boolean valid;
+        SQLiteStatement statement = statement(IS_VALID_KEY_SQL);
+        synchronized (statement) {
+            statement.bindString(1, keyValue);
+            statement.bindLong(2, bookId);
+            valid = statement.simpleQueryForLong() > 0;
+        }
+        if (!valid && filter != null) {
+            filter.onFalsePositive();
+        }
+        return valid;
+    }
+    
+    // Checks and consumes a one-time key with a single conditional UPDATE. Only the
+    // caller whose statement actually flipped the row to redeemed gets true, so two
+    // racing redemptions of the same key cannot both succeed.
+    public boolean redeemKey(String keyValue, int bookId) {
+        // Most mistyped keys are turned away here, without a write
+        KeyFilter filter = keyFilter;
+        if (filter != null && !filter.mightContain(keyValue)) {
+            return false;
+        }
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_KEY_REDEEMED, 1);
+        int redeemed = db.update(TABLE_DOWNLOAD_KEYS, values,
+                COLUMN_KEY_VALUE + "=? AND " + COLUMN_KEY_BOOK_ID + "=? AND " + COLUMN_KEY_REDEEMED + "=0",
+                new String[]{keyValue, String.valueOf(bookId)});
+        if (redeemed == 1) {
+            onKeysRemovedFromFilter(1);
+            bookCache.onKeysChanged();
+        } else if (filter != null) {
+            filter.onFalsePositive();
+        }
+        return redeemed == 1;
     }
     
     public void deleteKey(String keyValue) {
         SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_DOWNLOAD_KEYS, COLUMN_KEY_VALUE + "=?", new String[]{keyValue});
-        db.close();
+        // A redeemed key was already counted as removed when it was redeemed
+        int deleted = db.delete(TABLE_DOWNLOAD_KEYS, COLUMN_KEY_VALUE + "=? AND " + COLUMN_KEY_REDEEMED + "=0",
+                new String[]{keyValue});
+        onKeysRemovedFromFilter(deleted);
+        if (deleted == 0) {
+            // Deleting a redeemed key, if there is one
+            db.delete(TABLE_DOWNLOAD_KEYS, COLUMN_KEY_VALUE + "=?", new String[]{keyValue});
+        }
+        bookCache.onKeysChanged();
+    }
+    
+    // Builds a new key filter from the unredeemed keys and swaps it in. Reads the
+    // whole key column, so it belongs on a background thread; concurrent rebuilds
+    // wait for each other.
+    public KeyFilter rebuildKeyFilter() {
+        synchronized (keyFilterLock) {
+            SQLiteDatabase db = this.getReadableDatabase();
+            long liveKeys = DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + TABLE_DOWNLOAD_KEYS
+                    + " WHERE " + COLUMN_KEY_REDEEMED + " = 0", null);
+            KeyFilter filter = new KeyFilter((int) Math.min(Integer.MAX_VALUE,
+                    Math.max(KEY_FILTER_MIN_CAPACITY, liveKeys * 2)), KEY_FILTER_FALSE_POSITIVE_RATE);
+            pendingKeyFilter = filter;
+            
+            // Paged by id rather than one long cursor, so rows that move between cursor
+            // windows can't be skipped; keys added meanwhile reach `filter` as pending
+            String scanQuery = "SELECT " + COLUMN_KEY_ID + ", " + COLUMN_KEY_VALUE + " FROM " + TABLE_DOWNLOAD_KEYS
+                    + " WHERE " + COLUMN_KEY_REDEEMED + " = 0 AND " + COLUMN_KEY_ID + " > ?"
+                    + " ORDER BY " + COLUMN_KEY_ID + " LIMIT " + KEY_FILTER_SCAN_PAGE;
+            long afterId = 0;
+            int count;
+            do {
+                Cursor cursor = db.rawQuery(scanQuery, new String[]{String.valueOf(afterId)});
+                count = cursor.getCount();
+                while (cursor.moveToNext()) {
+                    afterId = cursor.getLong(0);
+                    filter.put(cursor.getString(1));
+                }
+                cursor.close();
+            } while (count == KEY_FILTER_SCAN_PAGE);
+            
+            keyFilter = filter;
+            pendingKeyFilter = null;
+            return filter;
+        }
+    }
+    
+    // True once the filter holds more keys than it was sized for, or too many removed ones
+    public boolean keyFilterNeedsRebuild() {
+        KeyFilter filter = keyFilter;
+        return filter != null && filter.needsRebuild();
+    }
+    
+    // The current key filter, for its metrics; null until the first rebuild
+    public KeyFilter getKeyFilter() {
+        return keyFilter;
+    }
+    
+    // The pending filter is read first. A rebuild swaps in keyFilter before it clears
+    // pendingKeyFilter, so a key either reaches the filter being built or, if that was
+    // already cleared, the one that replaced it; never only a filter about to be dropped.
+    private void addToKeyFilter(String keyValue) {
+        KeyFilter pending = pendingKeyFilter;
+        KeyFilter filter = keyFilter;
+        if (filter != null) {
+            filter.put(keyValue);
+        }
+        if (pending != null && pending != filter) {
+            pending.put(keyValue);
+        }
+    }
+    
+    private void onKeysRemovedFromFilter(int count) {
+        if (count <= 0) {
+            return;
+        }
+        // Same order as addToKeyFilter
+        KeyFilter pending = pendingKeyFilter;
+        KeyFilter filter = keyFilter;
+        if (filter != null) {
+            filter.onRemoved(count);
+        }
+        if (pending != null && pending != filter) {
+            pending.onRemoved(count);
+        }
     }
 }
@@ -0,0 +1,29 @@
+package com.example.bookgate;
+
+import java.security.SecureRandom;
+
+/**
+ * Creates short, cryptographically random download keys. Keys use the
+ * Crockford base32 alphabet, which leaves out I, L, O and U so they are easy
+ * to read out and type. Ten characters carry 50 random bits.
+ */
+public final class DownloadKeyGenerator {
+
+    public static final int KEY_LENGTH = 10;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private DownloadKeyGenerator() {
+    }
+
+    public static String newKey() {
+        long bits = random.nextLong();
+        char[] key = new char[KEY_LENGTH];
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            key[i] = ALPHABET[(int) (bits & 31)];
+            bits >>>= 5;
+        }
+        return new String(key);
+    }
+}
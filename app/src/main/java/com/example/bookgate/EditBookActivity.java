@@ -2,7 +2,6 @@ package com.example.bookgate;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
@@ -23,12 +22,11 @@ import androidx.core.content.FileProvider;
 import com.google.android.material.textfield.TextInputEditText;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.UUID;
 
 public class EditBookActivity extends AppCompatActivity {
 
@@ -41,10 +39,20 @@ public class EditBookActivity extends AppCompatActivity {
     private TextView pdfFileNameText;
     private Button updateBookButton;
 
-    private DatabaseHelper dbHelper;
+    private LibraryRepository repository;
+    private PdfStore pdfStore;
+    // The PDF copy in progress, if any
+    private FileImporter.Import pdfImport;
+    // Cover imports still running, and whether a save is queued; Update waits for all of them
+    private int coverImports;
+    private boolean saving;
     private Book book;
     private String imagePath;
+    // Where the camera writes its full-size shot, before it is imported
+    private String capturePath;
     private String pdfPath;
+    // Whether pdfPath was picked on this screen, so the screen holds a claim on it
+    private boolean pdfClaimed;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -59,23 +67,28 @@ public class EditBookActivity extends AppCompatActivity {
             return;
         }
 
-        // Initialize database helper
-        dbHelper = new DatabaseHelper(this);
-
-        // Get book details
-        book = dbHelper.getBookById(bookId);
-        if (book == null) {
-            Toast.makeText(this, "Error: Book not found", Toast.LENGTH_SHORT).show();
-            finish();
-            return;
-        }
+        // Initialize repository
+        repository = LibraryRepository.getInstance(this);
+        pdfStore = PdfStore.getInstance(this);
 
         // Initialize UI components
         setupToolbar();
         initializeUI();
 
-        // Load book details into UI
-        loadBookDetails();
+        // Get book details
+        updateBookButton.setEnabled(false);
+        repository.getBookById(bookId, loadedBook -> {
+            if (loadedBook == null) {
+                Toast.makeText(this, "Error: Book not found", Toast.LENGTH_SHORT).show();
+                finish();
+                return;
+            }
+            book = loadedBook;
+
+            // Load book details into UI
+            loadBookDetails();
+            updateSaveButton();
+        });
     }
 
     private void setupToolbar() {
@@ -116,13 +129,8 @@ public class EditBookActivity extends AppCompatActivity {
         imagePath = book.getImagePath();
         pdfPath = book.getPdfPath();
 
-        // Load cover image
-        if (imagePath != null && !imagePath.isEmpty()) {
-            File imageFile = new File(imagePath);
-            if (imageFile.exists()) {
-                coverPreview.setImageURI(Uri.fromFile(imageFile));
-            }
-        }
+        // Load cover image in the background, using the detail-size copy when there is one
+        CoverLoader.getInstance(this).load(book.getDetailCoverPath(), coverPreview, R.drawable.ic_book);
 
         // Set PDF file name
         if (pdfPath != null && !pdfPath.isEmpty()) {
@@ -148,7 +156,7 @@ public class EditBookActivity extends AppCompatActivity {
                 String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
                 String imageFileName = "JPEG_" + timeStamp + "_";
                 photoFile = File.createTempFile(imageFileName, ".jpg", storageDir);
-                imagePath = photoFile.getAbsolutePath();
+                capturePath = photoFile.getAbsolutePath();
             } catch (IOException ex) {
                 Toast.makeText(this, "Error creating image file", Toast.LENGTH_SHORT).show();
             }
@@ -198,11 +206,97 @@ public class EditBookActivity extends AppCompatActivity {
         book.setPdfPath(pdfPath);
 
         // Save to database
-        if (dbHelper.updateBook(book)) {
-            Toast.makeText(this, "Book updated successfully", Toast.LENGTH_SHORT).show();
-            finish(); // Close activity and return to list
+        saving = true;
+        updateSaveButton();
+        repository.updateBook(book, updated -> {
+            saving = false;
+            updateSaveButton();
+            if (updated) {
+                Toast.makeText(this, "Book updated successfully", Toast.LENGTH_SHORT).show();
+                finish(); // Close activity and return to list
+            } else {
+                Toast.makeText(this, "Failed to update book", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private File newCoverFile() {
+        File storageDir = getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+        // The timestamp only has one-second resolution; the suffix keeps a second pick within
+        // the same second from overwriting a cover a book or an import already points at
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        return new File(storageDir, "JPEG_" + timeStamp + "_" + suffix + ".jpg");
+    }
+
+    // Enabled only once the book is loaded and no import or save is running, so a late
+    // import can't miss the row
+    private void updateSaveButton() {
+        updateBookButton.setEnabled(book != null && pdfImport == null && coverImports == 0 && !saving);
+    }
+
+    private void onCoverImported(String path) {
+        coverImports--;
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        updateSaveButton();
+        if (path != null) {
+            imagePath = path;
+            CoverLoader.getInstance(this).load(path, coverPreview, R.drawable.ic_book);
+        } else {
+            Toast.makeText(this, "Error processing image", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void onPdfProgress(long bytesCopied, long totalBytes) {
+        pdfFileNameText.setText(totalBytes > 0
+                ? getString(R.string.pdf_import_progress, (int) (bytesCopied * 100 / totalBytes))
+                : getString(R.string.pdf_import_progress_size, (int) (bytesCopied / (1024 * 1024))));
+    }
+
+    private void onPdfImported(String path) {
+        pdfImport = null;
+        if (isFinishing() || isDestroyed()) {
+            // Nothing will save it now
+            pdfStore.release(path);
+            return;
+        }
+        updateSaveButton();
+        if (path != null) {
+            if (pdfClaimed) {
+                // The screen keeps one claim. Claims are counted, so this gives back either the
+                // earlier pick, which won't be saved now, or the spare claim on a repeated pick.
+                pdfStore.release(pdfPath);
+            }
+            pdfPath = path;
+            pdfClaimed = true;
+            pdfFileNameText.setText(new File(path).getName());
+            Toast.makeText(this, "PDF attached", Toast.LENGTH_SHORT).show();
         } else {
-            Toast.makeText(this, "Failed to update book", Toast.LENGTH_SHORT).show();
+            if (pdfPath != null && !pdfPath.isEmpty()) {
+                pdfFileNameText.setText(new File(pdfPath).getName());
+            } else {
+                pdfFileNameText.setText(R.string.no_file_selected);
+            }
+            Toast.makeText(this, "Error processing PDF", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Stops the copy and drops its .part file
+        if (pdfImport != null) {
+            pdfImport.cancel();
+        }
+        // Saved or not, the screen is done with its pick; a save holds its own claim
+        if (pdfClaimed) {
+            pdfStore.release(pdfPath);
+            pdfClaimed = false;
+        }
+        if (coverPreview != null) {
+            CoverLoader.getInstance(this).release(coverPreview);
         }
     }
 
@@ -212,81 +306,24 @@ public class EditBookActivity extends AppCompatActivity {
 
         if (resultCode == Activity.RESULT_OK) {
             if (requestCode == REQUEST_IMAGE_GALLERY && data != null) {
-                Uri selectedImage = data.getData();
-                try {
-                    Bitmap bitmap = MediaStore.Images.Media.getBitmap(getContentResolver(), selectedImage);
-                    // Save bitmap to app's private storage
-                    File storageDir = getExternalFilesDir(Environment.DIRECTORY_PICTURES);
-                    String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-                    String imageFileName = "JPEG_" + timeStamp + ".jpg";
-                    File imageFile = new File(storageDir, imageFileName);
-                    FileOutputStream out = new FileOutputStream(imageFile);
-                    bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
-                    out.close();
-
-                    imagePath = imageFile.getAbsolutePath();
-                    coverPreview.setImageBitmap(bitmap);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    Toast.makeText(this, "Error processing image", Toast.LENGTH_SHORT).show();
-                }
-            } else if (requestCode == REQUEST_IMAGE_CAPTURE) {
-                // Image captured and saved to imagePath
-                coverPreview.setImageURI(Uri.fromFile(new File(imagePath)));
+                // Downsample, orient and save the picked image in the background
+                ImageImporter.getInstance(this).importImage(data.getData(), newCoverFile(), this::onCoverImported);
+                coverImports++;
+                updateSaveButton();
+            } else if (requestCode == REQUEST_IMAGE_CAPTURE && capturePath != null) {
+                // The camera wrote a full-size shot; replace it with an imported copy
+                ImageImporter.getInstance(this).importCapture(new File(capturePath), newCoverFile(), this::onCoverImported);
+                capturePath = null;
+                coverImports++;
+                updateSaveButton();
             } else if (requestCode == REQUEST_PDF_FILE && data != null) {
-                Uri pdfUri = data.getData();
-                
-                // Copy PDF to app's private storage
-                try {
-                    // Ensure directory exists
-                    File storageDir = getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
-                    if (storageDir != null && !storageDir.exists()) {
-                        storageDir.mkdirs();
-                    }
-                    
-                    String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-                    String pdfFileName = "PDF_" + timeStamp + ".pdf";
-                    File pdfFile = new File(storageDir, pdfFileName);
-                    
-                    // Copy the file with improved error handling
-                    FileOutputStream out = new FileOutputStream(pdfFile);
-                    byte[] buffer = new byte[8192]; // Larger buffer for efficiency
-                    int read;
-                    
-                    InputStream in = getContentResolver().openInputStream(pdfUri);
-                    if (in != null) {
-                        while ((read = in.read(buffer)) != -1) {
-                            out.write(buffer, 0, read);
-                        }
-                        in.close();
-                        out.flush();
-                        out.close();
-                        
-                        // Ensure file was created properly
-                        if (pdfFile.exists() && pdfFile.length() > 0) {
-                            pdfPath = pdfFile.getAbsolutePath();
-                            pdfFileNameText.setText(pdfFileName);
-                            
-                            // Show success message with path for debugging
-                            Toast.makeText(this, 
-                                "PDF saved successfully at: " + pdfPath, 
-                                Toast.LENGTH_LONG).show();
-                        } else {
-                            Toast.makeText(this, 
-                                "Error: PDF file not created properly", 
-                                Toast.LENGTH_SHORT).show();
-                        }
-                    } else {
-                        Toast.makeText(this, 
-                            "Could not open input stream for PDF", 
-                            Toast.LENGTH_SHORT).show();
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    Toast.makeText(this, 
-                        "Error processing PDF: " + e.getMessage(), 
-                        Toast.LENGTH_LONG).show();
+                // Copy the PDF into the shared store in the background, replacing any copy
+                // still running for an earlier pick
+                if (pdfImport != null) {
+                    pdfImport.cancel();
                 }
+                pdfImport = pdfStore.importPdf(data.getData(), this::onPdfProgress, this::onPdfImported);
+                updateSaveButton();
             }
         }
     }
@@ -0,0 +1,264 @@
+package com.example.bookgate;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Copies picked documents into app storage on a background thread. The copy
+ * goes to a {@code .part} file next to its destination and is only renamed
+ * into place once complete, so a failed or cancelled import never leaves a
+ * partial file under a real name. A source the provider can hand over as a
+ * file is copied with {@link FileChannel#transferTo}, which stays in the
+ * kernel; anything else, or a copy that must also be hashed, goes through a
+ * large direct buffer. Progress is posted to the main thread a few times a
+ * second.
+ */
+public class FileImporter {
+
+    public interface ProgressListener {
+        // totalBytes is -1 when the provider doesn't report a size
+        void onProgress(long bytesCopied, long totalBytes);
+    }
+
+    // Moves a finished .part file to its final place and returns that path. Runs on the
+    // import thread; `digest` is null unless the import asked for one.
+    public interface Committer {
+        String commit(File part, byte[] digest) throws IOException;
+
+        // The import was cancelled after commit() had already run; called on the main thread
+        default void discard(String path) {
+            new File(path).delete();
+        }
+    }
+
+    // Like LibraryRepository.Request: cancelling drops the progress and the result
+    public static class Import {
+        private volatile boolean cancelled = false;
+
+        // The copy stops at its next chunk and deletes its .part file
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    static final int BUFFER_SIZE = 1024 * 1024;
+    // transferTo moves at most this much per call, so cancellation and progress stay responsive
+    static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 100;
+    private static final String PART_SUFFIX = ".part";
+    private static final String TAG = "FileImporter";
+
+    private static FileImporter instance;
+
+    private final ContentResolver contentResolver;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static synchronized FileImporter getInstance(Context context) {
+        if (instance == null) {
+            instance = new FileImporter(context.getApplicationContext().getContentResolver());
+        }
+        return instance;
+    }
+
+    private FileImporter(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    // Copies `source` to `destination`; the callback gets its path on the main thread, or
+    // null if the copy failed
+    public Import importUri(Uri source, File destination, ProgressListener progress,
+                            LibraryRepository.Callback<String> callback) {
+        return importUri(source, destination.getParentFile(), null, (part, digest) -> {
+            commit(part, destination);
+            return destination.getAbsolutePath();
+        }, progress, callback);
+    }
+
+    // Copies `source` into a .part file in `directory`, hashing it on the way with
+    // `digestAlgorithm` if not null, then hands it to `committer`
+    public Import importUri(Uri source, File directory, String digestAlgorithm, Committer committer,
+                            ProgressListener progress, LibraryRepository.Callback<String> callback) {
+        Import handle = new Import();
+        executor.execute(() -> {
+            String path = null;
+            File part = null;
+            try {
+                MessageDigest digest = digestAlgorithm != null ? MessageDigest.getInstance(digestAlgorithm) : null;
+                part = newPartFile(directory);
+                copy(source, part, digest, progress, handle);
+                path = committer.commit(part, digest != null ? digest.digest() : null);
+            } catch (InterruptedIOException e) {
+                // Cancelled
+            } catch (Exception e) {
+                Log.w(TAG, "Could not import " + source, e);
+            } finally {
+                if (part != null && part.exists()) {
+                    part.delete();
+                }
+            }
+            String result = path;
+            mainHandler.post(() -> {
+                if (!handle.isCancelled()) {
+                    callback.onResult(result);
+                } else if (result != null) {
+                    committer.discard(result);
+                }
+            });
+        });
+        return handle;
+    }
+
+    private void copy(Uri source, File part, MessageDigest digest, ProgressListener progress, Import handle)
+            throws IOException {
+        ProgressReporter reporter = progress != null ? new ProgressReporter(progress, handle) : null;
+        ParcelFileDescriptor descriptor = null;
+        try {
+            descriptor = contentResolver.openFileDescriptor(source, "r");
+        } catch (FileNotFoundException | SecurityException | UnsupportedOperationException e) {
+            // Some providers only stream
+        }
+        if (descriptor != null) {
+            try (ParcelFileDescriptor closing = descriptor;
+                 FileInputStream in = new FileInputStream(descriptor.getFileDescriptor())) {
+                copy(in.getChannel(), descriptor.getStatSize(), part, digest, reporter, handle);
+            }
+            return;
+        }
+        try (InputStream in = contentResolver.openInputStream(source)) {
+            if (in == null) {
+                throw new FileNotFoundException("Could not open " + source);
+            }
+            copy(Channels.newChannel(in), -1, part, digest, reporter, handle);
+        }
+    }
+
+    // Blocking copy of `source` into `destination`, which it creates or truncates. Returns
+    // the number of bytes copied; throws InterruptedIOException once `handle` is cancelled.
+    static long copy(ReadableByteChannel source, long totalBytes, File destination, MessageDigest digest,
+                     ProgressListener progress, Import handle) throws IOException {
+        long copied = 0;
+        try (FileOutputStream out = new FileOutputStream(destination)) {
+            FileChannel target = out.getChannel();
+            if (source instanceof FileChannel && digest == null && totalBytes >= 0) {
+                // A regular file: let the kernel move the bytes
+                FileChannel file = (FileChannel) source;
+                long start = file.position();
+                long size = file.size() - start;
+                while (copied < size) {
+                    checkCancelled(handle);
+                    long moved = file.transferTo(start + copied, Math.min(TRANSFER_CHUNK, size - copied), target);
+                    if (moved <= 0) {
+                        break;
+                    }
+                    copied += moved;
+                    report(progress, copied, totalBytes);
+                }
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                while (true) {
+                    checkCancelled(handle);
+                    int read = source.read(buffer);
+                    if (read == -1) {
+                        break;
+                    }
+                    buffer.flip();
+                    if (digest != null) {
+                        digest.update(buffer);
+                        buffer.rewind();
+                    }
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                    buffer.clear();
+                    copied += read;
+                    report(progress, copied, totalBytes);
+                }
+            }
+            checkCancelled(handle);
+            // On disk before it is renamed, so a crash can't leave a short file under the real name
+            target.force(false);
+        }
+        return copied;
+    }
+
+    // Renames a finished .part file over `destination` in one step
+    static void commit(File part, File destination) throws IOException {
+        if (!part.renameTo(destination)) {
+            throw new IOException("Could not move " + part + " to " + destination);
+        }
+    }
+
+    static File newPartFile(File directory) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        return File.createTempFile("import", PART_SUFFIX, directory);
+    }
+
+    static boolean isPartFile(File file) {
+        return file.getName().endsWith(PART_SUFFIX);
+    }
+
+    private static void checkCancelled(Import handle) throws InterruptedIOException {
+        if (handle != null && handle.isCancelled()) {
+            throw new InterruptedIOException("Import cancelled");
+        }
+    }
+
+    private static void report(ProgressListener progress, long copied, long totalBytes) {
+        if (progress != null) {
+            progress.onProgress(copied, totalBytes);
+        }
+    }
+
+    // Forwards progress to the main thread, at most once per PROGRESS_INTERVAL_MS
+    private class ProgressReporter implements ProgressListener {
+        private final ProgressListener listener;
+        private final Import handle;
+        private long lastReport;
+
+        ProgressReporter(ProgressListener listener, Import handle) {
+            this.listener = listener;
+            this.handle = handle;
+        }
+
+        @Override
+        public void onProgress(long bytesCopied, long totalBytes) {
+            long now = SystemClock.uptimeMillis();
+            if (now - lastReport >= PROGRESS_INTERVAL_MS || bytesCopied == totalBytes) {
+                lastReport = now;
+                mainHandler.post(() -> {
+                    if (!handle.isCancelled()) {
+                        listener.onProgress(bytesCopied, totalBytes);
+                    }
+                });
+            }
+        }
+    }
+}
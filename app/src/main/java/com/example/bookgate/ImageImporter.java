@@ -0,0 +1,182 @@
+package com.example.bookgate;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Copies a picked or captured cover into app storage without ever holding
+ * the full-resolution image. The source is read three times as a stream:
+ * once for its dimensions, once for its EXIF orientation and once to decode
+ * it with an inSampleSize that keeps the long side at or under
+ * {@link #MAX_DIMENSION}. Peak memory is bounded by that size, twice over
+ * while a rotated copy is made, whatever the size of the source.
+ */
+public class ImageImporter {
+
+    private static final String TAG = "ImageImporter";
+    public static final int MAX_DIMENSION = 2048;
+    private static final int JPEG_QUALITY = 90;
+
+    private static ImageImporter instance;
+
+    private final ContentResolver contentResolver;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static synchronized ImageImporter getInstance(Context context) {
+        if (instance == null) {
+            instance = new ImageImporter(context.getApplicationContext().getContentResolver());
+        }
+        return instance;
+    }
+
+    private ImageImporter(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    // Imports `source` into `destination` in the background; the callback gets the
+    // destination path on the main thread, or null if the image could not be read
+    public void importImage(Uri source, File destination, LibraryRepository.Callback<String> callback) {
+        importImage(source, destination, callback, null);
+    }
+
+    private void importImage(Uri source, File destination, LibraryRepository.Callback<String> callback,
+                             File deleteAfter) {
+        executor.execute(() -> {
+            String path;
+            try {
+                path = importNow(contentResolver, source, destination);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Could not import image " + source, e);
+                destination.delete();
+                path = null;
+            }
+            if (deleteAfter != null) {
+                deleteAfter.delete();
+            }
+            String result = path;
+            mainHandler.post(() -> callback.onResult(result));
+        });
+    }
+
+    // Replaces a full-size camera shot with an imported copy at `destination`; the shot
+    // is deleted either way
+    public void importCapture(File capture, File destination, LibraryRepository.Callback<String> callback) {
+        importImage(Uri.fromFile(capture), destination, callback, capture);
+    }
+
+    // Blocking import; returns the destination path, or null if the source isn't an image
+    static String importNow(ContentResolver resolver, Uri source, File destination) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = resolver.openInputStream(source)) {
+            if (in == null) {
+                return null;
+            }
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int orientation;
+        try (InputStream in = resolver.openInputStream(source)) {
+            orientation = in != null
+                    ? new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)
+                    : ExifInterface.ORIENTATION_NORMAL;
+        } catch (IOException e) {
+            // Not every format carries EXIF
+            orientation = ExifInterface.ORIENTATION_NORMAL;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, MAX_DIMENSION);
+        Bitmap bitmap;
+        try (InputStream in = resolver.openInputStream(source)) {
+            bitmap = in != null ? BitmapFactory.decodeStream(in, null, options) : null;
+        }
+        if (bitmap == null) {
+            return null;
+        }
+
+        Matrix matrix = orientationMatrix(orientation);
+        if (matrix != null) {
+            Bitmap oriented = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+            if (oriented != bitmap) {
+                bitmap.recycle();
+                bitmap = oriented;
+            }
+        }
+
+        // Written next to the destination and renamed, so a failed import leaves no partial file
+        File temp = new File(destination.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } finally {
+            bitmap.recycle();
+        }
+        if (!temp.renameTo(destination)) {
+            temp.delete();
+            throw new IOException("Could not move the imported image to " + destination);
+        }
+        return destination.getAbsolutePath();
+    }
+
+    // The smallest power of two that brings the long side to `maxDimension` or under
+    static int sampleSize(int width, int height, int maxDimension) {
+        int longSide = Math.max(width, height);
+        int sampleSize = 1;
+        while (longSide / sampleSize > maxDimension) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    // The transform that makes an image stored with this EXIF orientation upright, or null
+    static Matrix orientationMatrix(int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(270);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(270);
+                matrix.postScale(-1, 1);
+                break;
+            default:
+                return null;
+        }
+        return matrix;
+    }
+}
@@ -17,6 +17,7 @@ public class KeyAdapter extends RecyclerView.Adapter<KeyAdapter.KeyViewHolder> {
     private final Context context;
     private final List<DownloadKey> keysList;
     private final OnKeyDeleteListener listener;
+    private KeyPager pager;
 
     public interface OnKeyDeleteListener {
         void onKeyDelete(String keyValue);
@@ -28,6 +29,10 @@ public class KeyAdapter extends RecyclerView.Adapter<KeyAdapter.KeyViewHolder> {
         this.listener = listener;
     }
 
+    public void setPager(KeyPager pager) {
+        this.pager = pager;
+    }
+
     @NonNull
     @Override
     public KeyViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -37,6 +42,10 @@ public class KeyAdapter extends RecyclerView.Adapter<KeyAdapter.KeyViewHolder> {
 
     @Override
     public void onBindViewHolder(@NonNull KeyViewHolder holder, int position) {
+        if (pager != null) {
+            pager.loadAround(position);
+        }
+
         DownloadKey key = keysList.get(position);
         
         holder.keyValueText.setText(key.getKeyValue());
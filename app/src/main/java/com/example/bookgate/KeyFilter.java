@@ -0,0 +1,145 @@
+package com.example.bookgate;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter over download key values. {@link #mightContain} never
+ * says no for a key that was put, so a "no" lets a mistyped key be turned
+ * away without a database lookup; a "yes" still has to be checked there.
+ * Keys can't be taken out: removals are only counted, and the owner builds
+ * a fresh filter once {@link #needsRebuild} says enough have piled up.
+ */
+public class KeyFilter {
+
+    // Removed keys still answer "maybe"; past this share of the filter it is rebuilt
+    private static final double MAX_REMOVED_SHARE = 0.25;
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final int capacity;
+
+    private final AtomicLong insertions = new AtomicLong();
+    private final AtomicLong removals = new AtomicLong();
+    private final AtomicLong checks = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    // Sized so that `capacity` keys give about `falsePositiveRate`
+    public KeyFilter(int capacity, double falsePositiveRate) {
+        this.capacity = Math.max(1, capacity);
+        long bits = (long) Math.ceil(-this.capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (bits + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = words * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / this.capacity * Math.log(2)));
+    }
+
+    public void put(String key) {
+        long hash = hash(key);
+        long h1 = hash;
+        long h2 = mix(hash ^ 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            // Skip the atomic write when the bit is already set, as it mostly is once the filter fills
+            if ((bits.get(word) & mask) == 0) {
+                bits.accumulateAndGet(word, mask, (current, add) -> current | add);
+            }
+        }
+        insertions.incrementAndGet();
+    }
+
+    public boolean mightContain(String key) {
+        checks.incrementAndGet();
+        long hash = hash(key);
+        long h1 = hash;
+        long h2 = mix(hash ^ 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                rejections.incrementAndGet();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A key the filter let through turned out not to be valid
+    public void onFalsePositive() {
+        falsePositives.incrementAndGet();
+    }
+
+    // A key was redeemed or deleted; it stays in the filter until the next rebuild
+    public void onRemoved(int count) {
+        removals.addAndGet(count);
+    }
+
+    public boolean needsRebuild() {
+        long inserted = insertions.get();
+        return inserted > capacity || removals.get() > inserted * MAX_REMOVED_SHARE;
+    }
+
+    // Metrics
+
+    public long getMemoryBytes() {
+        return bitCount / 8;
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    public long getInsertions() {
+        return insertions.get();
+    }
+
+    public long getRemovals() {
+        return removals.get();
+    }
+
+    // The false-positive rate the filter should have for the keys put so far
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-hashCount * (double) insertions.get() / bitCount), hashCount);
+    }
+
+    // Of the keys that were let through, the share that the database then rejected.
+    // Includes redeemed and deleted keys the filter still holds.
+    public double getObservedFalsePositiveRate() {
+        long passed = checks.get() - rejections.get();
+        return passed > 0 ? (double) falsePositives.get() / passed : 0;
+    }
+
+    public long getCheckCount() {
+        return checks.get();
+    }
+
+    public long getRejectionCount() {
+        return rejections.get();
+    }
+
+    // 64-bit FNV-1a over the UTF-16 units, then a finalizer so nearby keys spread out
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
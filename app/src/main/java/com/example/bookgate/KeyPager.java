@@ -0,0 +1,151 @@
+package com.example.bookgate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads one book's download keys in key order, a page at a time as the list
+ * is scrolled, optionally limited to keys starting with a prefix. Pages are
+ * keyed on the last loaded key. The loaded keys live in a single list that
+ * the adapter shows directly; single adds and deletes are applied to it in
+ * place so only that row changes.
+ */
+public class KeyPager {
+
+    public interface Listener {
+        // The list was replaced by the first page of a new load
+        void onKeysReset();
+
+        void onKeysAppended(int positionStart, int count);
+    }
+
+    private static final int PAGE_SIZE = 50;
+    // Start loading the next page when this many items are left to show
+    private static final int PREFETCH_DISTANCE = 15;
+
+    private final LibraryRepository repository;
+    private final Listener listener;
+
+    private final List<DownloadKey> keys = new ArrayList<>();
+    private int bookId = -1;
+    private String prefix = "";
+    private boolean loading = false;
+    private boolean endReached = true;
+    // The load in flight; a refresh cancels it so its result is dropped
+    private LibraryRepository.Request pendingRequest;
+
+    public KeyPager(LibraryRepository repository, Listener listener) {
+        this.repository = repository;
+        this.listener = listener;
+    }
+
+    // The keys shown by the adapter; only the pager changes it
+    public List<DownloadKey> getKeys() {
+        return keys;
+    }
+
+    // Shows the keys of `bookId` starting with `prefix`. Returns false, without
+    // reloading, when that is already the filter.
+    public boolean setFilter(int bookId, String prefix) {
+        String trimmed = prefix != null ? prefix.trim() : "";
+        if (bookId == this.bookId && trimmed.equals(this.prefix)) {
+            return false;
+        }
+        this.bookId = bookId;
+        this.prefix = trimmed;
+        keys.clear();
+        listener.onKeysReset();
+        refresh();
+        return true;
+    }
+
+    // Reloads from the first key, keeping at least as many rows as are already shown
+    public void refresh() {
+        cancelPendingRequest();
+        final int limit = Math.max(PAGE_SIZE, keys.size());
+        loading = true;
+        pendingRequest = repository.getKeysPage(bookId, prefix, null, limit, page -> {
+            keys.clear();
+            keys.addAll(page);
+            endReached = page.size() < limit;
+            loading = false;
+            listener.onKeysReset();
+        });
+    }
+
+    // Called by the adapter for every bound position
+    public void loadAround(int position) {
+        if (loading || endReached || keys.isEmpty() || position < keys.size() - PREFETCH_DISTANCE) {
+            return;
+        }
+
+        String lastKey = keys.get(keys.size() - 1).getKeyValue();
+        loading = true;
+        pendingRequest = repository.getKeysPage(bookId, prefix, lastKey, PAGE_SIZE, page -> {
+            int start = keys.size();
+            keys.addAll(page);
+            endReached = page.size() < PAGE_SIZE;
+            loading = false;
+            listener.onKeysAppended(start, page.size());
+        });
+    }
+
+    // Inserts a newly added key in order if it belongs in the loaded range.
+    // Returns its position, or -1 if it is filtered out or not loaded yet.
+    public int onKeyAdded(DownloadKey key) {
+        if (key.getBookId() != bookId || !key.getKeyValue().startsWith(prefix)) {
+            return -1;
+        }
+        int position = search(key.getKeyValue());
+        if (position >= 0) {
+            return -1;
+        }
+        position = -position - 1;
+        // Past the last loaded key it will arrive with a later page
+        if (position == keys.size() && !endReached) {
+            return -1;
+        }
+        keys.add(position, key);
+        return position;
+    }
+
+    // Removes a deleted key. Returns its former position, or -1 if it was not loaded.
+    public int onKeyDeleted(String keyValue) {
+        int position = search(keyValue);
+        if (position < 0) {
+            return -1;
+        }
+        keys.remove(position);
+        return position;
+    }
+
+    public void shutdown() {
+        cancelPendingRequest();
+    }
+
+    private void cancelPendingRequest() {
+        if (pendingRequest != null) {
+            pendingRequest.cancel();
+            pendingRequest = null;
+        }
+        loading = false;
+    }
+
+    // Binary search by key value, with the same contract as Collections.binarySearch
+    private int search(String keyValue) {
+        int low = 0;
+        int high = keys.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = keys.get(mid).getKeyValue().compareTo(keyValue);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+}
@@ -0,0 +1,343 @@
+package com.example.bookgate;
+
+import android.content.Context;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The only way screens reach the database. Every call runs on a background
+ * thread and its result is posted back to the main thread. Reads share a
+ * small pool; writes go through a single thread so they apply in the order
+ * they were made. Each call returns a {@link Request} that can be cancelled,
+ * which drops its result, e.g. when a newer refresh supersedes it. A call
+ * that throws is logged and delivers the result that call uses for failure
+ * (null, false, -1 or an empty list).
+ */
+public class LibraryRepository {
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    public static class Request {
+        private volatile boolean cancelled = false;
+        private Future<?> future;
+
+        public void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static final String TAG = "LibraryRepository";
+    private static final int READ_THREADS = 2;
+
+    private static LibraryRepository instance;
+
+    private final Context context;
+    private final DatabaseHelper dbHelper;
+    private final PdfStore pdfStore;
+    private final ExecutorService readExecutor = Executors.newFixedThreadPool(READ_THREADS);
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean keyFilterRebuildQueued = new AtomicBoolean();
+
+    public static synchronized LibraryRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new LibraryRepository(context.getApplicationContext(), DatabaseHelper.getInstance(context),
+                    PdfStore.getInstance(context));
+        }
+        return instance;
+    }
+
+    private LibraryRepository(Context context, DatabaseHelper dbHelper, PdfStore pdfStore) {
+        this.context = context;
+        this.dbHelper = dbHelper;
+        this.pdfStore = pdfStore;
+        // Calibrate password hashing ahead of the first login or registration
+        readExecutor.execute(dbHelper::getPasswordHasher);
+        // Build the key filter so mistyped keys can be rejected without a query
+        scheduleKeyFilterRebuild();
+        // Books added before covers were downsampled at import get their copies now
+        readExecutor.execute(this::backfillCoverThumbnails);
+        // Clear out files left behind by earlier runs
+        sweepOrphanedMedia(null);
+    }
+
+    // Users
+
+    public Request getUserByEmail(String email, Callback<User> callback) {
+        return read(() -> dbHelper.getUserByEmail(email), null, callback);
+    }
+
+    // Returns the user if the credentials match, otherwise null; takes around 100 ms
+    public Request authenticate(String email, String password, Callback<User> callback) {
+        return read(() -> dbHelper.authenticate(email, password), null, callback);
+    }
+
+    public Request addUser(String name, String email, String password, String role, Callback<Long> callback) {
+        return write(() -> dbHelper.addUser(name, email, password, role), -1L, callback);
+    }
+
+    // Books
+
+    public Request getBooksPage(String afterTitle, int afterId, int limit, Callback<List<BookSummary>> callback) {
+        return read(() -> dbHelper.getBooksPage(afterTitle, afterId, limit), Collections.emptyList(), callback);
+    }
+
+    public Request searchBooks(String query, int limit, Callback<List<BookSummary>> callback) {
+        return read(() -> dbHelper.searchBooks(query, limit), Collections.emptyList(), callback);
+    }
+
+    public Request getAllBookSummaries(Callback<List<BookSummary>> callback) {
+        return read(dbHelper::getAllBookSummaries, Collections.emptyList(), callback);
+    }
+
+    // Changes whenever a book is added, edited or deleted; cheap enough to call on the main thread
+    public long getCatalogVersion() {
+        return dbHelper.getBookCache().getVersion();
+    }
+
+    public Request getBookById(int bookId, Callback<Book> callback) {
+        return read(() -> dbHelper.getBookById(bookId), null, callback);
+    }
+
+    // Writes the grid and detail covers next to the image before inserting the row. The PDF
+    // is claimed until the write is done; the caller's own claim is its to release.
+    public Request addBook(String title, String author, String description, String imagePath, String pdfPath,
+                           Callback<Long> callback) {
+        pdfStore.retain(pdfPath);
+        return write(() -> {
+            try {
+                CoverThumbnails.Paths covers = CoverThumbnails.generate(context, imagePath);
+                long id = dbHelper.addBook(title, author, description, imagePath,
+                        covers != null ? covers.thumbnailPath : null,
+                        covers != null ? covers.detailImagePath : null,
+                        covers != null ? covers.placeholderColor : 0, pdfPath);
+                if (id == -1 && covers != null) {
+                    deleteFile(covers.thumbnailPath);
+                    deleteFile(covers.detailImagePath);
+                }
+                return id;
+            } finally {
+                // Referenced by the row now, or not saved at all
+                pdfStore.release(pdfPath);
+            }
+        }, -1L, callback);
+    }
+
+    // If the cover was replaced, its downsampled copies are regenerated and the old image and
+    // its copies deleted; a replaced PDF is deleted if no other book shares it. As with
+    // addBook, the new PDF is claimed until the write is done.
+    public Request updateBook(Book book, Callback<Boolean> callback) {
+        String pdfPath = book.getPdfPath();
+        pdfStore.retain(pdfPath);
+        return write(() -> {
+            try {
+                Book stored = dbHelper.getBookById(book.getId());
+                boolean newCover = stored != null && book.getImagePath() != null
+                        && !book.getImagePath().equals(stored.getImagePath());
+                CoverThumbnails.Paths covers = null;
+                if (newCover) {
+                    covers = CoverThumbnails.generate(context, book.getImagePath());
+                    book.setThumbnailPath(covers != null ? covers.thumbnailPath : null);
+                    book.setDetailImagePath(covers != null ? covers.detailImagePath : null);
+                    book.setCoverColor(covers != null ? covers.placeholderColor : 0);
+                }
+                boolean updated = dbHelper.updateBook(book);
+                if (newCover && updated) {
+                    // Each import writes its own file, so no other book uses the old image
+                    deleteFile(stored.getImagePath());
+                    deleteFile(stored.getThumbnailPath());
+                    deleteFile(stored.getDetailImagePath());
+                } else if (!updated && covers != null) {
+                    deleteFile(covers.thumbnailPath);
+                    deleteFile(covers.detailImagePath);
+                }
+                if (updated && pdfPath != null && !pdfPath.equals(stored.getPdfPath())) {
+                    deletePdfIfUnreferenced(stored.getPdfPath());
+                }
+                return updated;
+            } finally {
+                // Referenced by the row now, or not saved at all
+                pdfStore.release(pdfPath);
+            }
+        }, false, callback);
+    }
+
+    // Deletes the book, its keys and, once the rows are gone, its cover files and its PDF
+    // unless another book shares it
+    public Request deleteBook(int bookId, Callback<Boolean> callback) {
+        return write(() -> {
+            // List rows only carry a summary, so look up the file paths here
+            Book book = dbHelper.getBookById(bookId);
+            boolean deleted = book != null && dbHelper.deleteBook(bookId);
+            rebuildKeyFilterIfNeeded();
+            if (deleted) {
+                deleteFile(book.getImagePath());
+                deleteFile(book.getThumbnailPath());
+                deleteFile(book.getDetailImagePath());
+                deletePdfIfUnreferenced(book.getPdfPath());
+            }
+            return deleted;
+        }, false, callback);
+    }
+
+    // Deletes cover and PDF files no book references once they are past MediaSweeper's grace
+    // period; the callback gets the number of bytes reclaimed. Runs on the write thread, so it
+    // can't race a book being saved with a newly imported file.
+    public Request sweepOrphanedMedia(Callback<Long> callback) {
+        return write(() -> {
+            MediaSweeper sweeper = new MediaSweeper(
+                    context.getExternalFilesDir(Environment.DIRECTORY_PICTURES), pdfStore);
+            return sweeper.sweep(dbHelper.getMediaPaths(), System.currentTimeMillis());
+        }, 0L, callback);
+    }
+
+    // Download keys
+
+    public Request getKeysPage(int bookId, String prefix, String afterKey, int limit,
+                               Callback<List<DownloadKey>> callback) {
+        return read(() -> dbHelper.getKeysPage(bookId, prefix, afterKey, limit), Collections.emptyList(), callback);
+    }
+
+    public Request addDownloadKey(int bookId, String keyValue, Callback<Long> callback) {
+        return write(() -> {
+            long id = dbHelper.addDownloadKey(bookId, keyValue);
+            rebuildKeyFilterIfNeeded();
+            return id;
+        }, -1L, callback);
+    }
+
+    public Request generateDownloadKeys(int bookId, int count, Callback<List<String>> callback) {
+        return write(() -> {
+            List<String> keys = dbHelper.generateDownloadKeys(bookId, count);
+            rebuildKeyFilterIfNeeded();
+            return keys;
+        }, Collections.emptyList(), callback);
+    }
+
+    public Request redeemKey(String keyValue, int bookId, Callback<Boolean> callback) {
+        return write(() -> {
+            boolean redeemed = dbHelper.redeemKey(keyValue, bookId);
+            rebuildKeyFilterIfNeeded();
+            return redeemed;
+        }, false, callback);
+    }
+
+    // The callback gets false if the key could not be deleted
+    public Request deleteKey(String keyValue, Callback<Boolean> callback) {
+        return write(() -> {
+            dbHelper.deleteKey(keyValue);
+            rebuildKeyFilterIfNeeded();
+            return true;
+        }, false, callback);
+    }
+
+    // The filter can't drop keys or grow, so it is rebuilt once enough have been
+    // removed or added. The rebuild runs on the read pool, off the write thread.
+    private void rebuildKeyFilterIfNeeded() {
+        if (dbHelper.keyFilterNeedsRebuild()) {
+            scheduleKeyFilterRebuild();
+        }
+    }
+
+    private void scheduleKeyFilterRebuild() {
+        if (keyFilterRebuildQueued.compareAndSet(false, true)) {
+            readExecutor.execute(() -> {
+                try {
+                    dbHelper.rebuildKeyFilter();
+                } finally {
+                    keyFilterRebuildQueued.set(false);
+                }
+            });
+        }
+    }
+
+    // One write per book, so other writes are not held up behind the whole backfill.
+    // Books from version 5 have copies but no color; theirs are rewritten in place.
+    private void backfillCoverThumbnails() {
+        for (int bookId : dbHelper.getBookIdsWithoutThumbnails()) {
+            writeExecutor.execute(() -> {
+                Book book = dbHelper.getBookById(bookId);
+                if (book == null || (book.getThumbnailPath() != null && book.getCoverColor() != 0)) {
+                    return;
+                }
+                CoverThumbnails.Paths covers = CoverThumbnails.generate(context, book.getImagePath());
+                if (covers != null && !dbHelper.setCoverThumbnails(bookId, book.getImagePath(),
+                        covers.thumbnailPath, covers.detailImagePath, covers.placeholderColor)) {
+                    deleteFile(covers.thumbnailPath);
+                    deleteFile(covers.detailImagePath);
+                }
+            });
+        }
+    }
+
+    // `failure` is what the callback gets if the work throws: the value the call already
+    // returns when it doesn't succeed, so screens report it the same way
+    private <T> Request read(Callable<T> work, T failure, Callback<T> callback) {
+        return submit(readExecutor, work, failure, callback);
+    }
+
+    private <T> Request write(Callable<T> work, T failure, Callback<T> callback) {
+        return submit(writeExecutor, work, failure, callback);
+    }
+
+    private <T> Request submit(ExecutorService executor, Callable<T> work, T failure, Callback<T> callback) {
+        Request request = new Request();
+        request.future = executor.submit(() -> {
+            if (request.isCancelled()) {
+                return;
+            }
+            T value;
+            try {
+                value = work.call();
+            } catch (Exception e) {
+                // Logged here so it is not swallowed by the Future; one failed call must not
+                // take the app down
+                Log.w(TAG, "Library request failed", e);
+                value = failure;
+            }
+            T result = value;
+            mainHandler.post(() -> {
+                if (!request.isCancelled() && callback != null) {
+                    callback.onResult(result);
+                }
+            });
+        });
+        return request;
+    }
+
+    // Call on the write thread, so no row can start referencing the PDF after the count
+    private void deletePdfIfUnreferenced(String pdfPath) {
+        if (pdfPath != null && !pdfPath.isEmpty() && dbHelper.countBooksWithPdf(pdfPath) == 0) {
+            pdfStore.deleteUnreferenced(pdfPath);
+        }
+    }
+
+    private static void deleteFile(String path) {
+        if (path != null && !path.isEmpty()) {
+            File file = new File(path);
+            if (file.exists()) {
+                file.delete();
+            }
+        }
+    }
+}
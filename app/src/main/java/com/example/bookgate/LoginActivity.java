@@ -16,7 +16,8 @@ public class LoginActivity extends AppCompatActivity {
     private TextInputEditText emailInput, passwordInput;
     private Button loginButton, loginAdminButton;
     private TextView registerText;
-    private DatabaseHelper dbHelper;
+    private LibraryRepository repository;
+    private Session session;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -30,7 +31,8 @@ public class LoginActivity extends AppCompatActivity {
         loginAdminButton = findViewById(R.id.login_admin_button);
         registerText = findViewById(R.id.register_text);
         
-        dbHelper = new DatabaseHelper(this);
+        repository = LibraryRepository.getInstance(this);
+        session = Session.getInstance(this);
 
         // Member Login button click listener
         loginButton.setOnClickListener(new View.OnClickListener() {
@@ -68,29 +70,34 @@ public class LoginActivity extends AppCompatActivity {
             return;
         }
 
+        // Check credentials in the background; ignore taps until the check is back
+        setLoginButtonsEnabled(false);
+        repository.authenticate(email, password, user -> {
+            setLoginButtonsEnabled(true);
+            onLoginChecked(user, isAdmin);
+        });
+    }
+
+    private void onLoginChecked(User user, boolean isAdmin) {
         // Check if user exists and credentials are correct
-        if (dbHelper.checkUser(email, password)) {
+        if (user != null) {
             // Check if user role matches the requested role
-            boolean userIsAdmin = dbHelper.isUserAdmin(email);
+            boolean userIsAdmin = user.isLibrarian();
             
             if (isAdmin && !userIsAdmin) {
                 Toast.makeText(this, "You are not registered as a librarian", Toast.LENGTH_SHORT).show();
                 return;
             }
-
-            // Get the user object for session
-            User user = dbHelper.getUserByEmail(email);
             
-            // Login successful, navigate to appropriate screen
+            // Login successful; every screen reads the user from the session from now on
+            session.start(user);
             if (userIsAdmin) {
                 // Admin flow
                 Intent intent = new Intent(LoginActivity.this, AdminPanelActivity.class);
-                intent.putExtra("USER_EMAIL", email);
                 startActivity(intent);
             } else {
                 // Member flow
                 Intent intent = new Intent(LoginActivity.this, BookListActivity.class);
-                intent.putExtra("USER_EMAIL", email);
                 startActivity(intent);
             }
             
@@ -100,4 +107,9 @@ public class LoginActivity extends AppCompatActivity {
             Toast.makeText(this, "Invalid email or password", Toast.LENGTH_SHORT).show();
         }
     }
+
+    private void setLoginButtonsEnabled(boolean enabled) {
+        loginButton.setEnabled(enabled);
+        loginAdminButton.setEnabled(enabled);
+    }
 }
@@ -13,11 +13,16 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         EdgeToEdge.enable(this);
         
-        // Check if a default admin account exists
-        DatabaseHelper dbHelper = new DatabaseHelper(this);
-        
-        // Redirect to LoginActivity
-        Intent intent = new Intent(MainActivity.this, LoginActivity.class);
+        // Skip the login screen if a session was saved before the app was closed
+        Session session = Session.getInstance(this);
+        Intent intent;
+        if (!session.isLoggedIn()) {
+            intent = new Intent(MainActivity.this, LoginActivity.class);
+        } else if (session.isLibrarian()) {
+            intent = new Intent(MainActivity.this, AdminPanelActivity.class);
+        } else {
+            intent = new Intent(MainActivity.this, BookListActivity.class);
+        }
         startActivity(intent);
         finish(); // Close MainActivity so user can't go back to it
     }
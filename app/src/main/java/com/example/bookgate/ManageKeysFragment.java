@@ -1,9 +1,12 @@
 package com.example.bookgate;
 
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.Spinner;
@@ -20,16 +23,21 @@ import com.google.android.material.textfield.TextInputEditText;
 import java.util.ArrayList;
 import java.util.List;
 
-public class ManageKeysFragment extends Fragment implements KeyAdapter.OnKeyDeleteListener {
+public class ManageKeysFragment extends Fragment implements KeyAdapter.OnKeyDeleteListener, KeyPager.Listener {
+
+    // Largest batch a single "generate" click may create
+    private static final int MAX_GENERATED_KEYS = 10000;
 
     private Spinner bookSpinner;
-    private TextInputEditText keyInput;
-    private Button addKeyButton;
+    private TextInputEditText keyInput, keyCountInput, keyFilterInput;
+    private Button addKeyButton, generateKeysButton;
     private RecyclerView keysRecyclerView;
     private KeyAdapter keyAdapter;
-    private DatabaseHelper dbHelper;
-    private List<Book> booksList;
-    private List<DownloadKey> keysList;
+    private KeyPager keyPager;
+    private LibraryRepository repository;
+    private List<BookSummary> booksList;
+    // Load in flight; a newer refresh cancels the older one
+    private LibraryRepository.Request booksRequest;
 
     @Nullable
     @Override
@@ -40,35 +48,71 @@ public class ManageKeysFragment extends Fragment implements KeyAdapter.OnKeyDele
         bookSpinner = view.findViewById(R.id.book_spinner);
         keyInput = view.findViewById(R.id.key_input);
         addKeyButton = view.findViewById(R.id.add_key_button);
+        keyCountInput = view.findViewById(R.id.key_count_input);
+        generateKeysButton = view.findViewById(R.id.generate_keys_button);
+        keyFilterInput = view.findViewById(R.id.key_filter_input);
         keysRecyclerView = view.findViewById(R.id.keys_recycler_view);
 
-        dbHelper = new DatabaseHelper(requireContext());
+        repository = LibraryRepository.getInstance(requireContext());
         
         // Initialize lists
         booksList = new ArrayList<>();
-        keysList = new ArrayList<>();
 
-        // Set up RecyclerView
-        keyAdapter = new KeyAdapter(requireContext(), keysList, this);
+        // Set up RecyclerView; the pager loads the selected book's keys page by page
+        keyPager = new KeyPager(repository, this);
+        keyAdapter = new KeyAdapter(requireContext(), keyPager.getKeys(), this);
+        keyAdapter.setPager(keyPager);
         keysRecyclerView.setLayoutManager(new LinearLayoutManager(requireContext()));
         keysRecyclerView.setAdapter(keyAdapter);
 
-        // Load books and keys
-        loadBooks();
-        loadKeys();
-
         // Set click listener for add key button
         addKeyButton.setOnClickListener(v -> addKey());
+        generateKeysButton.setOnClickListener(v -> generateKeys());
+
+        // The spinner picks the book whose keys are listed; the filter narrows them by prefix
+        bookSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View itemView, int position, long id) {
+                keyPager.setFilter(selectedBookId(), keyFilterText());
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                keyPager.setFilter(-1, keyFilterText());
+            }
+        });
+        keyFilterInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                keyPager.setFilter(selectedBookId(), keyFilterText());
+            }
+        });
 
         return view;
     }
 
     private void loadBooks() {
-        booksList = dbHelper.getAllBooks();
+        if (booksRequest != null) {
+            booksRequest.cancel();
+        }
+        booksRequest = repository.getAllBookSummaries(this::showBooks);
+    }
+
+    private void showBooks(List<BookSummary> books) {
+        int previousBookId = selectedBookId();
+        booksList = books;
         List<String> bookTitles = new ArrayList<>();
         
         // Add book titles to spinner
-        for (Book book : booksList) {
+        for (BookSummary book : booksList) {
             bookTitles.add(book.getTitle());
         }
         
@@ -76,14 +120,43 @@ public class ManageKeysFragment extends Fragment implements KeyAdapter.OnKeyDele
                 requireContext(), android.R.layout.simple_spinner_item, bookTitles);
         spinnerAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         bookSpinner.setAdapter(spinnerAdapter);
+
+        // Keep the book that was selected before the reload
+        for (int i = 0; i < booksList.size(); i++) {
+            if (booksList.get(i).getId() == previousBookId) {
+                bookSpinner.setSelection(i);
+                break;
+            }
+        }
+
+        // Keys may have been redeemed meanwhile, so reload them even if the filter is unchanged
+        if (!keyPager.setFilter(selectedBookId(), keyFilterText())) {
+            keyPager.refresh();
+        }
     }
 
-    private void loadKeys() {
-        keysList.clear();
-        keysList.addAll(dbHelper.getAllKeys());
+    private int selectedBookId() {
+        int position = bookSpinner.getSelectedItemPosition();
+        if (booksList == null || position < 0 || position >= booksList.size()) {
+            return -1;
+        }
+        return booksList.get(position).getId();
+    }
+
+    private String keyFilterText() {
+        return keyFilterInput.getText() != null ? keyFilterInput.getText().toString() : "";
+    }
+
+    @Override
+    public void onKeysReset() {
         keyAdapter.notifyDataSetChanged();
     }
 
+    @Override
+    public void onKeysAppended(int positionStart, int count) {
+        keyAdapter.notifyItemRangeInserted(positionStart, count);
+    }
+
     private void addKey() {
         String keyValue = keyInput.getText().toString().trim();
         
@@ -101,34 +174,101 @@ public class ManageKeysFragment extends Fragment implements KeyAdapter.OnKeyDele
         // Get selected book
         int position = bookSpinner.getSelectedItemPosition();
         if (position >= 0 && position < booksList.size()) {
-            Book selectedBook = booksList.get(position);
+            BookSummary selectedBook = booksList.get(position);
             
             // Add key to database
-            long result = dbHelper.addDownloadKey(selectedBook.getId(), keyValue);
+            repository.addDownloadKey(selectedBook.getId(), keyValue, result -> {
+                if (!isAdded()) {
+                    return;
+                }
+                if (result != -1) {
+                    keyInput.setText("");
+                    Toast.makeText(requireContext(), "Key added successfully", Toast.LENGTH_SHORT).show();
+                    // Show just the new row, if it falls within the loaded keys
+                    int inserted = keyPager.onKeyAdded(new DownloadKey(result.intValue(), selectedBook.getId(),
+                            keyValue, selectedBook.getTitle()));
+                    if (inserted != -1) {
+                        keyAdapter.notifyItemInserted(inserted);
+                    }
+                } else {
+                    Toast.makeText(requireContext(), "Failed to add key", Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+    }
+
+    private void generateKeys() {
+        String countText = keyCountInput.getText().toString().trim();
+        int count = countText.isEmpty() ? 0 : Integer.parseInt(countText);
+        
+        // Validate inputs
+        if (count <= 0 || count > MAX_GENERATED_KEYS) {
+            Toast.makeText(requireContext(), "Enter a number of keys between 1 and " + MAX_GENERATED_KEYS,
+                    Toast.LENGTH_SHORT).show();
+            return;
+        }
+        
+        if (booksList.isEmpty()) {
+            Toast.makeText(requireContext(), "No books available", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        
+        // Get selected book
+        int position = bookSpinner.getSelectedItemPosition();
+        if (position >= 0 && position < booksList.size()) {
+            BookSummary selectedBook = booksList.get(position);
             
-            if (result != -1) {
-                keyInput.setText("");
-                Toast.makeText(requireContext(), "Key added successfully", Toast.LENGTH_SHORT).show();
-                loadKeys(); // Refresh keys list
-            } else {
-                Toast.makeText(requireContext(), "Failed to add key", Toast.LENGTH_SHORT).show();
-            }
+            // Insert the whole batch in one transaction
+            generateKeysButton.setEnabled(false);
+            repository.generateDownloadKeys(selectedBook.getId(), count, keys -> {
+                generateKeysButton.setEnabled(true);
+                if (!isAdded()) {
+                    return;
+                }
+                if (keys.isEmpty()) {
+                    Toast.makeText(requireContext(), "Failed to generate keys", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                keyCountInput.setText("");
+                Toast.makeText(requireContext(), keys.size() + " keys generated for \"" + selectedBook.getTitle() + "\"",
+                        Toast.LENGTH_SHORT).show();
+                keyPager.refresh(); // A whole batch; reload the loaded range
+            });
         }
     }
 
     @Override
     public void onKeyDelete(String keyValue) {
         // Delete key from database
-        dbHelper.deleteKey(keyValue);
-        Toast.makeText(requireContext(), "Key deleted", Toast.LENGTH_SHORT).show();
-        loadKeys(); // Refresh keys list
+        repository.deleteKey(keyValue, deleted -> {
+            if (!isAdded()) {
+                return;
+            }
+            if (!deleted) {
+                Toast.makeText(requireContext(), "Failed to delete key", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            Toast.makeText(requireContext(), "Key deleted", Toast.LENGTH_SHORT).show();
+            int removed = keyPager.onKeyDeleted(keyValue);
+            if (removed != -1) {
+                keyAdapter.notifyItemRemoved(removed);
+            }
+        });
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        // Refresh data when fragment becomes visible
+        // Refresh data when fragment becomes visible; the keys reload once the books are shown
         loadBooks();
-        loadKeys();
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (booksRequest != null) {
+            booksRequest.cancel();
+        }
+        keyPager.shutdown();
     }
 }
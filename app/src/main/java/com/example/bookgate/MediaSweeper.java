@@ -0,0 +1,69 @@
+package com.example.bookgate;
+
+import java.io.File;
+import java.util.Set;
+
+/**
+ * Deletes cover and PDF files no book points at any more: copies left by a
+ * failed write, camera shots that were never imported, covers and PDFs an
+ * edit replaced, and .part or .tmp files from an interrupted import. A file
+ * is only swept once it has gone untouched for {@link #GRACE_PERIOD_MS}, so
+ * an import still being written, or a picked file whose book has not been
+ * saved yet, is left alone. PDFs go through {@link PdfStore}, which keeps
+ * any an import has just handed out.
+ */
+public class MediaSweeper {
+
+    // Longer than any add or edit screen stays open with an unsaved pick
+    static final long GRACE_PERIOD_MS = 24L * 60 * 60 * 1000;
+
+    private final File coverDirectory;
+    private final PdfStore pdfStore;
+
+    private int filesDeleted;
+
+    MediaSweeper(File coverDirectory, PdfStore pdfStore) {
+        this.coverDirectory = coverDirectory;
+        this.pdfStore = pdfStore;
+    }
+
+    // Blocking; deletes files last modified before `now` minus the grace period that are not
+    // in `referenced`, and returns the bytes reclaimed. Call it on the repository's write
+    // thread, so no book can start pointing at a file while it runs.
+    public long sweep(Set<String> referenced, long now) {
+        long cutoff = now - GRACE_PERIOD_MS;
+        filesDeleted = 0;
+        return sweep(coverDirectory, referenced, cutoff, false)
+                + sweep(pdfStore.getDirectory(), referenced, cutoff, true);
+    }
+
+    // Files removed by the last sweep
+    public int getFilesDeleted() {
+        return filesDeleted;
+    }
+
+    private long sweep(File directory, Set<String> referenced, long cutoff, boolean pdfs) {
+        // Null when external storage is unavailable
+        File[] files = directory != null ? directory.listFiles() : null;
+        if (files == null) {
+            return 0;
+        }
+        long reclaimed = 0;
+        for (File file : files) {
+            String path = file.getAbsolutePath();
+            // A .part file is rewritten every chunk, so one still being copied is never this old
+            if (!file.isFile() || referenced.contains(path) || file.lastModified() >= cutoff) {
+                continue;
+            }
+            long length = file.length();
+            boolean deleted = pdfs && !FileImporter.isPartFile(file)
+                    ? pdfStore.deleteUnreferenced(path)
+                    : file.delete();
+            if (deleted) {
+                reclaimed += length;
+                filesDeleted++;
+            }
+        }
+        return reclaimed;
+    }
+}
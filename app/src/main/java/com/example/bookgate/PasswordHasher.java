@@ -0,0 +1,192 @@
+package com.example.bookgate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Locale;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Salted PBKDF2 password hashes, stored as
+ * "pbkdf2-&lt;hmac&gt;$&lt;iterations&gt;$&lt;salt hex&gt;$&lt;hash hex&gt;" so every row
+ * carries what is needed to check it. Hashing is slow on purpose; never call
+ * it on the main thread. Rows written before hashing hold the plain password
+ * and still verify, so they can be rehashed on the next successful login.
+ */
+public class PasswordHasher {
+
+    public static final int MIN_ITERATIONS = 10000;
+    public static final int MAX_ITERATIONS = 2000000;
+
+    private static final String PREFIX = "pbkdf2-";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int TIMED_RUNS = 3;
+    private static final int CALIBRATION_ROUNDS = 3;
+    private static final int WARM_UP_TARGETS = 3;
+
+    // HmacSHA256 is only available from API 26; older devices get HmacSHA1
+    private static final String[] ALGORITHMS = {"PBKDF2WithHmacSHA256", "PBKDF2WithHmacSHA1"};
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private final int iterations;
+
+    public PasswordHasher(int iterations) {
+        this.iterations = (int) clamp(iterations);
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        String algorithm = availableAlgorithm();
+        byte[] hash = pbkdf2(algorithm, password, salt, iterations);
+        return PREFIX + hmacName(algorithm) + "$" + iterations + "$" + toHex(salt) + "$" + toHex(hash);
+    }
+
+    // Checks a password against a stored hash, or against a legacy plaintext value
+    public static boolean verify(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        try {
+            String algorithm = "PBKDF2With" + parts[0].substring(PREFIX.length());
+            int storedIterations = Integer.parseInt(parts[1]);
+            byte[] salt = fromHex(parts[2]);
+            byte[] expected = fromHex(parts[3]);
+            byte[] actual = pbkdf2(algorithm, password, salt, storedIterations);
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return false;
+        }
+    }
+
+    public static boolean isHashed(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    // Plaintext rows, rows hashed with fewer iterations, or with the weaker HMAC, get rehashed
+    public boolean needsRehash(String stored) {
+        if (!isHashed(stored)) {
+            return true;
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4 || !parts[0].equals(PREFIX + hmacName(availableAlgorithm()))) {
+            return true;
+        }
+        try {
+            return Integer.parseInt(parts[1]) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Picks the iteration count that makes one hash take about
+     * {@code targetMillis} on this device. The count is doubled until a
+     * run takes a quarter of the target, scaled linearly to the target, then
+     * re-timed and rescaled until it lands within 20%. Timings are the best
+     * of a few runs, taken after a warm-up, so class loading and JIT don't
+     * skew the count.
+     */
+    public static int calibrate(long targetMillis) {
+        String algorithm = availableAlgorithm();
+        byte[] salt = new byte[SALT_BYTES];
+        long targetNanos = targetMillis * 1000000L;
+
+        // Spend a few target lengths on small runs first, so a JIT (on the JVM) has compiled the hot loop
+        long iterations = MIN_ITERATIONS / 4;
+        long warmUpEnd = System.nanoTime() + WARM_UP_TARGETS * targetNanos;
+        long elapsed;
+        do {
+            elapsed = time(algorithm, salt, iterations);
+        } while (System.nanoTime() < warmUpEnd);
+        while (elapsed < targetNanos / 4 && iterations < MAX_ITERATIONS) {
+            iterations *= 2;
+            elapsed = time(algorithm, salt, iterations);
+        }
+        for (int round = 0; round < CALIBRATION_ROUNDS; round++) {
+            iterations = clamp(iterations * targetNanos / Math.max(1, elapsed));
+            elapsed = time(algorithm, salt, iterations);
+            if (Math.abs(elapsed - targetNanos) <= targetNanos / 5) {
+                break;
+            }
+        }
+        return (int) iterations;
+    }
+
+    private static long clamp(long iterations) {
+        return Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, iterations));
+    }
+
+    private static long time(String algorithm, byte[] salt, long iterations) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            long start = System.nanoTime();
+            pbkdf2(algorithm, "calibration", salt, (int) iterations);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static String availableAlgorithm() {
+        for (String algorithm : ALGORITHMS) {
+            try {
+                SecretKeyFactory.getInstance(algorithm);
+                return algorithm;
+            } catch (NoSuchAlgorithmException ignored) {
+            }
+        }
+        throw new IllegalStateException("No PBKDF2 implementation available");
+    }
+
+    private static String hmacName(String algorithm) {
+        return algorithm.substring("PBKDF2With".length());
+    }
+
+    private static byte[] pbkdf2(String algorithm, String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(algorithm).generateSecret(spec).getEncoded();
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new IllegalStateException("PBKDF2 failed: " + algorithm, e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(String.format(Locale.US, "%02x", b));
+        }
+        return builder.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Odd-length hex");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.bookgate;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Environment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Book PDFs, stored under the SHA-256 of their content as
+ * {@code <digest>.pdf}. The digest is computed while {@link FileImporter}
+ * copies the file, so a PDF is read once; if the store already holds the same content the
+ * copy is dropped and the existing path is returned. A path therefore
+ * names one content for good, and the same PDF added to two books is kept
+ * once. Files are shared by the books whose pdf_path points at them:
+ * {@link LibraryRepository} deletes one only when no book row references
+ * it and no screen or queued save holds a claim on it.
+ */
+public class PdfStore {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String SUFFIX = ".pdf";
+
+    private static PdfStore instance;
+
+    private final FileImporter importer;
+    private final File directory;
+    // Claims on paths whose book row has not been saved yet, by path. Counted, since the
+    // same content can be picked on two screens, or twice on one.
+    private final Map<String, Integer> pending = new HashMap<>();
+
+    public static synchronized PdfStore getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new PdfStore(FileImporter.getInstance(appContext),
+                    appContext.getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS));
+        }
+        return instance;
+    }
+
+    PdfStore(FileImporter importer, File directory) {
+        this.importer = importer;
+        this.directory = directory;
+    }
+
+    // Copies the document at `source` into the store in the background; the callback gets
+    // its stored path on the main thread, or null if it could not be read. The caller holds a
+    // claim on the path until it calls release() for it.
+    public FileImporter.Import importPdf(Uri source, FileImporter.ProgressListener progress,
+                                         LibraryRepository.Callback<String> callback) {
+        return importer.importUri(source, directory, DIGEST_ALGORITHM, new FileImporter.Committer() {
+            @Override
+            public String commit(File part, byte[] digest) throws IOException {
+                return claim(part, digest);
+            }
+
+            @Override
+            public void discard(String path) {
+                // Possibly shared with a book, so only give up the claim
+                release(path);
+            }
+        }, progress, callback);
+    }
+
+    // Moves a finished copy to its digest name, or drops it if that content is stored already
+    private String claim(File part, byte[] digest) throws IOException {
+        if (part.length() == 0) {
+            return null;
+        }
+        File stored = new File(directory, toHex(digest) + SUFFIX);
+        String path = stored.getAbsolutePath();
+        // Under the lock, so an existing copy can't be deleted between the check and the claim
+        synchronized (pending) {
+            if (!stored.exists()) {
+                FileImporter.commit(part, stored);
+            }
+            retain(path);
+        }
+        return path;
+    }
+
+    // Takes another claim on a stored path, e.g. while a save that references it is queued;
+    // each claim is given back with release()
+    public void retain(String path) {
+        if (path == null || path.isEmpty()) {
+            return;
+        }
+        synchronized (pending) {
+            Integer claims = pending.get(path);
+            pending.put(path, claims != null ? claims + 1 : 1);
+        }
+    }
+
+    // Gives back one claim from an import or retain()
+    public void release(String path) {
+        if (path == null || path.isEmpty()) {
+            return;
+        }
+        synchronized (pending) {
+            Integer claims = pending.get(path);
+            if (claims == null || claims <= 1) {
+                pending.remove(path);
+            } else {
+                pending.put(path, claims - 1);
+            }
+        }
+    }
+
+    // Deletes a PDF the caller has found no book references, unless anything still holds a
+    // claim on it; returns whether it was deleted
+    public boolean deleteUnreferenced(String path) {
+        if (path == null || path.isEmpty()) {
+            return false;
+        }
+        synchronized (pending) {
+            return !pending.containsKey(path) && new File(path).delete();
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(String.format(Locale.US, "%02x", b));
+        }
+        return builder.toString();
+    }
+}
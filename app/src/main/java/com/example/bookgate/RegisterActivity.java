@@ -20,7 +20,7 @@ public class RegisterActivity extends AppCompatActivity {
     private CheckBox registerAsAdminCheckbox;
     private Button registerButton;
     private TextView loginText;
-    private DatabaseHelper dbHelper;
+    private LibraryRepository repository;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -37,7 +37,7 @@ public class RegisterActivity extends AppCompatActivity {
         registerButton = findViewById(R.id.register_button);
         loginText = findViewById(R.id.login_text);
         
-        dbHelper = new DatabaseHelper(this);
+        repository = LibraryRepository.getInstance(this);
 
         // Show/hide admin key input based on checkbox
         registerAsAdminCheckbox.setOnCheckedChangeListener((buttonView, isChecked) -> {
@@ -80,12 +80,6 @@ public class RegisterActivity extends AppCompatActivity {
             return;
         }
 
-        // Check if email already exists
-        if (dbHelper.getUserByEmail(email) != null) {
-            Toast.makeText(this, "Email already registered. Please use a different email.", Toast.LENGTH_SHORT).show();
-            return;
-        }
-
         // Verify admin key if trying to register as admin
         if (isAdmin) {
             if (adminKey.isEmpty() || !adminKey.equals(DatabaseHelper.ADMIN_KEY)) {
@@ -94,21 +88,36 @@ public class RegisterActivity extends AppCompatActivity {
             }
         }
 
-        // All validations passed, register the user
-        String role = isAdmin ? DatabaseHelper.ROLE_LIBRARIAN : DatabaseHelper.ROLE_MEMBER;
-        long userId = dbHelper.addUser(name, email, password, role);
+        // Check if email already exists, then register the user
+        registerButton.setEnabled(false);
+        repository.getUserByEmail(email, existingUser -> {
+            if (existingUser != null) {
+                registerButton.setEnabled(true);
+                Toast.makeText(this, "Email already registered. Please use a different email.", Toast.LENGTH_SHORT).show();
+                return;
+            }
+
+            // All validations passed, register the user
+            String role = isAdmin ? DatabaseHelper.ROLE_LIBRARIAN : DatabaseHelper.ROLE_MEMBER;
+            repository.addUser(name, email, password, role, userId -> {
+                registerButton.setEnabled(true);
+                onUserAdded(new User(userId.intValue(), name, email, null, role));
+            });
+        });
+    }
 
-        if (userId != -1) {
+    private void onUserAdded(User user) {
+        if (user.getId() != -1) {
             Toast.makeText(this, "Registration successful!", Toast.LENGTH_SHORT).show();
+            Session.getInstance(this).start(user);
             
             // Navigate to appropriate screen
             Intent intent;
-            if (isAdmin) {
+            if (user.isLibrarian()) {
                 intent = new Intent(RegisterActivity.this, AdminPanelActivity.class);
             } else {
                 intent = new Intent(RegisterActivity.this, BookListActivity.class);
             }
-            intent.putExtra("USER_EMAIL", email);
             startActivity(intent);
             finish(); // Close registration activity
         } else {
@@ -0,0 +1,82 @@
+package com.example.bookgate;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * The signed-in user. Set once when a login or registration succeeds, kept
+ * in memory for screens to read, and saved to preferences so the app can
+ * skip the login screen after a restart. The password is never stored here.
+ */
+public class Session {
+
+    private static final String PREFS_NAME = "session";
+    private static final String KEY_USER_ID = "user_id";
+    private static final String KEY_NAME = "name";
+    private static final String KEY_EMAIL = "email";
+    private static final String KEY_ROLE = "role";
+
+    private static Session instance;
+
+    private final SharedPreferences prefs;
+    private int userId;
+    private String name;
+    private String email;
+    private String role;
+
+    public static synchronized Session getInstance(Context context) {
+        if (instance == null) {
+            instance = new Session(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private Session(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        userId = prefs.getInt(KEY_USER_ID, -1);
+        name = prefs.getString(KEY_NAME, null);
+        email = prefs.getString(KEY_EMAIL, null);
+        role = prefs.getString(KEY_ROLE, null);
+    }
+
+    public synchronized void start(User user) {
+        userId = user.getId();
+        name = user.getName();
+        email = user.getEmail();
+        role = user.getRole();
+        prefs.edit()
+                .putInt(KEY_USER_ID, userId)
+                .putString(KEY_NAME, name)
+                .putString(KEY_EMAIL, email)
+                .putString(KEY_ROLE, role)
+                .apply();
+    }
+
+    public synchronized void end() {
+        userId = -1;
+        name = null;
+        email = null;
+        role = null;
+        prefs.edit().clear().apply();
+    }
+
+    public synchronized boolean isLoggedIn() {
+        return email != null;
+    }
+
+    public synchronized int getUserId() {
+        return userId;
+    }
+
+    public synchronized String getName() {
+        return name;
+    }
+
+    public synchronized String getEmail() {
+        return email;
+    }
+
+    public synchronized boolean isLibrarian() {
+        return DatabaseHelper.ROLE_LIBRARIAN.equals(role);
+    }
+}
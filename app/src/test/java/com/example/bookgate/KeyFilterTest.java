@@ -0,0 +1,98 @@
+package com.example.bookgate;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * The key filter at a million keys. Prints its size and the measured
+ * false-positive rate next to the expected one.
+ */
+public class KeyFilterTest {
+
+    private static final int KEYS = 1000000;
+    private static final int PROBES = 1000000;
+    private static final double TARGET_RATE = 0.01;
+
+    @Test
+    public void millionKeys() {
+        KeyFilter filter = new KeyFilter(KEYS, TARGET_RATE);
+        Set<String> keys = new HashSet<>(KEYS * 2);
+        while (keys.size() < KEYS) {
+            keys.add(DownloadKeyGenerator.newKey());
+        }
+        for (String key : keys) {
+            filter.put(key);
+        }
+
+        // No false negatives
+        for (String key : keys) {
+            assertTrue(filter.mightContain(key));
+        }
+
+        int falsePositives = 0;
+        List<String> probes = new ArrayList<>(PROBES);
+        while (probes.size() < PROBES) {
+            String key = DownloadKeyGenerator.newKey();
+            if (!keys.contains(key)) {
+                probes.add(key);
+            }
+        }
+        long start = System.nanoTime();
+        for (String probe : probes) {
+            if (filter.mightContain(probe)) {
+                falsePositives++;
+            }
+        }
+        double nanosPerProbe = (double) (System.nanoTime() - start) / PROBES;
+        double measuredRate = (double) falsePositives / PROBES;
+
+        System.out.printf("KeyFilter %d keys: %d KiB, %d hashes, expected FPP %.4f, measured %.4f, %.0f ns/check%n",
+                KEYS, filter.getMemoryBytes() / 1024, filter.getHashCount(),
+                filter.getExpectedFalsePositiveRate(), measuredRate, nanosPerProbe);
+
+        assertEquals(KEYS, filter.getInsertions());
+        assertEquals(TARGET_RATE, filter.getExpectedFalsePositiveRate(), TARGET_RATE * 0.1);
+        assertTrue("measured " + measuredRate, measuredRate < TARGET_RATE * 1.5);
+        // About 9.6 bits a key at 1%
+        assertTrue(filter.getMemoryBytes() < KEYS * 10L / 8 + 8);
+    }
+
+    @Test
+    public void rebuildAfterTooManyRemovalsOrInsertions() {
+        KeyFilter filter = new KeyFilter(100, TARGET_RATE);
+        for (int i = 0; i < 100; i++) {
+            filter.put("KEY" + i);
+        }
+        assertFalse(filter.needsRebuild());
+
+        filter.onRemoved(25);
+        assertFalse(filter.needsRebuild());
+        filter.onRemoved(1);
+        assertTrue(filter.needsRebuild());
+
+        KeyFilter full = new KeyFilter(100, TARGET_RATE);
+        for (int i = 0; i <= 100; i++) {
+            full.put("KEY" + i);
+        }
+        assertTrue(full.needsRebuild());
+    }
+
+    @Test
+    public void observedRateCountsOnlyKeysLetThrough() {
+        KeyFilter filter = new KeyFilter(100, TARGET_RATE);
+        filter.put("PRESENT");
+
+        assertTrue(filter.mightContain("PRESENT"));
+        filter.onFalsePositive();
+        assertTrue(filter.mightContain("PRESENT"));
+
+        assertEquals(2, filter.getCheckCount());
+        assertEquals(0.5, filter.getObservedFalsePositiveRate(), 1e-9);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.bookgate;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local tests for password hashing. {@link #calibrationHitsTarget} is also
+ * the calibration benchmark: it prints the chosen iteration count and how
+ * long a hash takes with it on the host.
+ */
+public class PasswordHasherTest {
+
+    private static final long TARGET_MILLIS = 100;
+
+    @Test
+    public void hashVerifiesOnlyTheSamePassword() {
+        PasswordHasher hasher = new PasswordHasher(PasswordHasher.MIN_ITERATIONS);
+        String stored = hasher.hash("secret");
+
+        assertTrue(PasswordHasher.isHashed(stored));
+        assertTrue(PasswordHasher.verify("secret", stored));
+        assertFalse(PasswordHasher.verify("Secret", stored));
+        assertFalse(PasswordHasher.verify("", stored));
+        assertFalse(hasher.needsRehash(stored));
+    }
+
+    @Test
+    public void saltsDiffer() {
+        PasswordHasher hasher = new PasswordHasher(PasswordHasher.MIN_ITERATIONS);
+        assertNotEquals(hasher.hash("secret"), hasher.hash("secret"));
+    }
+
+    @Test
+    public void legacyPlaintextVerifiesAndNeedsRehash() {
+        PasswordHasher hasher = new PasswordHasher(PasswordHasher.MIN_ITERATIONS);
+
+        assertFalse(PasswordHasher.isHashed("admin123"));
+        assertTrue(PasswordHasher.verify("admin123", "admin123"));
+        assertFalse(PasswordHasher.verify("admin124", "admin123"));
+        assertTrue(hasher.needsRehash("admin123"));
+    }
+
+    @Test
+    public void fewerIterationsNeedRehash() {
+        String stored = new PasswordHasher(PasswordHasher.MIN_ITERATIONS).hash("secret");
+        PasswordHasher stronger = new PasswordHasher(PasswordHasher.MIN_ITERATIONS * 2);
+
+        assertTrue(stronger.needsRehash(stored));
+        // Old hashes still verify after the count goes up
+        assertTrue(PasswordHasher.verify("secret", stored));
+    }
+
+    @Test
+    public void malformedHashDoesNotVerify() {
+        assertFalse(PasswordHasher.verify("secret", "pbkdf2-HmacSHA256$10000$zz$00"));
+        assertFalse(PasswordHasher.verify("secret", "pbkdf2-HmacSHA256$x$00$00"));
+        assertFalse(PasswordHasher.verify("secret", "pbkdf2-HmacSHA256$10000"));
+        assertFalse(PasswordHasher.verify("secret", null));
+    }
+
+    @Test
+    public void calibrationHitsTarget() {
+        long start = System.nanoTime();
+        int iterations = PasswordHasher.calibrate(TARGET_MILLIS);
+        long calibrationMillis = (System.nanoTime() - start) / 1000000;
+
+        PasswordHasher hasher = new PasswordHasher(iterations);
+        hasher.hash("warm-up");
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long hashStart = System.nanoTime();
+            hasher.hash("secret");
+            best = Math.min(best, System.nanoTime() - hashStart);
+        }
+        long hashMillis = best / 1000000;
+
+        System.out.printf("PBKDF2 calibration: %d iterations in %d ms, one hash %d ms (target %d ms)%n",
+                iterations, calibrationMillis, hashMillis, TARGET_MILLIS);
+
+        assertTrue(iterations >= PasswordHasher.MIN_ITERATIONS);
+        assertTrue(iterations <= PasswordHasher.MAX_ITERATIONS);
+        // Loose bounds: build machines are noisy, but a hash should land near the target
+        if (iterations > PasswordHasher.MIN_ITERATIONS && iterations < PasswordHasher.MAX_ITERATIONS) {
+            assertTrue("hash took " + hashMillis + " ms", hashMillis >= TARGET_MILLIS / 4);
+            assertTrue("hash took " + hashMillis + " ms", hashMillis <= TARGET_MILLIS * 4);
+        }
+    }
+}